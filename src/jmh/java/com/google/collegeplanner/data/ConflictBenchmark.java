@@ -0,0 +1,91 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures conflict checks between sections and adding sections to and removing them from a
+ * Schedule, which are the innermost operations of the scheduler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConflictBenchmark {
+  @Param({"1", "3"})
+  public int meetingsPerSection;
+
+  @Param({"0.5"})
+  public double overlap;
+
+  private Section[] sections;
+  private int next;
+
+  @Setup
+  public void setup() {
+    ArrayList<Section> all = new ArrayList<Section>();
+    for (ArrayList<Section> course :
+        SyntheticCatalog.generate(16, 16, meetingsPerSection, overlap, 42)) {
+      all.addAll(course);
+    }
+    sections = all.toArray(new Section[0]);
+  }
+
+  /**
+   * Checks one section against every other section.
+   */
+  @Benchmark
+  public void sectionConflicts(Blackhole blackhole) {
+    Section section = sections[next++ % sections.length];
+    for (Section other : sections) {
+      blackhole.consume(section.conflictsWith(other));
+    }
+  }
+
+  /**
+   * Adds up to four sections to a schedule and removes them again, like one branch of the
+   * search does.
+   */
+  @Benchmark
+  public int addAndRemoveClasses() {
+    Schedule schedule = new Schedule();
+    int added = 0;
+    for (int i = 0; i < 4; i++) {
+      if (schedule.addClass(sections[(next++ * 7) % sections.length])) {
+        added++;
+      }
+    }
+    for (int i = 0; i < added; i++) {
+      schedule.removeLastClass();
+    }
+    return added;
+  }
+}
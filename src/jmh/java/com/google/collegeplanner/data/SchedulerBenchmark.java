@@ -0,0 +1,87 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures full runs of the schedulers on synthetic catalogs, from the section lists to the
+ * first page of schedules, including building the compatibility matrix.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+  @Param({"5", "8"})
+  public int courses;
+
+  @Param({"10", "40"})
+  public int sectionsPerCourse;
+
+  @Param({"2"})
+  public int meetingsPerSection;
+
+  @Param({"0.3", "0.8"})
+  public double overlap;
+
+  private ArrayList<ArrayList<Section>> catalog;
+
+  @Setup
+  public void setup() {
+    catalog = SyntheticCatalog.generate(courses, sectionsPerCourse, meetingsPerSection, overlap, 7);
+  }
+
+  @Benchmark
+  public ArrayList<Schedule> possibleSchedules() {
+    return new SemesterScheduler(catalog).getPossibleSchedules();
+  }
+
+  @Benchmark
+  public ArrayList<Schedule> possibleSchedulesMostConstrainedFirst() {
+    SemesterScheduler scheduler = new SemesterScheduler(catalog);
+    scheduler.setMostConstrainedFirst(true);
+    return scheduler.getPossibleSchedules();
+  }
+
+  @Benchmark
+  public ArrayList<Schedule> possibleSchedulesSat() {
+    return new SatScheduler(catalog).getPossibleSchedules();
+  }
+
+  @Benchmark
+  public ArrayList<Schedule> bestSchedules() {
+    return new SemesterScheduler(catalog).getBestSchedules(new SchedulePreferences());
+  }
+
+  @Benchmark
+  public ScheduleCount count() {
+    return new ScheduleCounter(catalog).count();
+  }
+}
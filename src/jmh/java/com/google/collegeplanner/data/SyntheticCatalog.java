@@ -0,0 +1,77 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates random course catalogs for the benchmarks. Every section gets its meetings at random
+ * days and times. The overlap controls how crowded the week is: at 0 meetings start anywhere
+ * between 8am and 6pm, at 1 they all start within the same hour.
+ */
+public class SyntheticCatalog {
+  private static final String[] DAY_PATTERNS = {"MWF", "TuTh", "MW", "F", "M", "Tu", "W", "Th"};
+  private static final int FIRST_START = 8 * 60;
+  private static final int LAST_START = 18 * 60;
+  private static final int MEETING_MINUTES = 50;
+
+  private SyntheticCatalog() {}
+
+  /**
+   * Returns the candidate sections of every course.
+   * @param courses The number of courses.
+   * @param sectionsPerCourse The number of sections of every course.
+   * @param meetingsPerSection The number of meetings of every section.
+   * @param overlap How crowded the week is, between 0 and 1.
+   * @param seed The seed of the generator. The same arguments give the same catalog.
+   */
+  public static ArrayList<ArrayList<Section>> generate(int courses, int sectionsPerCourse,
+      int meetingsPerSection, double overlap, long seed) {
+    Random random = new Random(seed);
+    int window = Math.max(60, (int) ((LAST_START - FIRST_START) * (1 - overlap)));
+    ArrayList<ArrayList<Section>> catalog = new ArrayList<ArrayList<Section>>();
+    try {
+      for (int course = 0; course < courses; course++) {
+        ArrayList<Section> sections = new ArrayList<Section>();
+        for (int section = 0; section < sectionsPerCourse; section++) {
+          Meeting[] meetings = new Meeting[meetingsPerSection];
+          for (int meeting = 0; meeting < meetingsPerSection; meeting++) {
+            // Start times are on 5 minute boundaries like real UMD meetings.
+            int start = FIRST_START + random.nextInt(window / 5) * 5;
+            meetings[meeting] = new Meeting(DAY_PATTERNS[random.nextInt(DAY_PATTERNS.length)],
+                "Room", "Building", formatTime(start), formatTime(start + MEETING_MINUTES));
+          }
+          sections.add(new Section(String.format("%04d", section + 101), "BENCH" + course,
+              "0", Integer.toString(random.nextInt(30)), "30", new String[0], meetings));
+        }
+        catalog.add(sections);
+      }
+    } catch (ParseException e) {
+      throw new IllegalStateException("Generated an invalid time.", e);
+    }
+    return catalog;
+  }
+
+  /**
+   * Formats minutes after midnight as 12-hour time, e.g. 1:05pm.
+   */
+  private static String formatTime(int minutes) {
+    int hour = minutes / 60;
+    int clockHour = hour % 12 == 0 ? 12 : hour % 12;
+    return String.format("%d:%02d%s", clockHour, minutes % 60, hour < 12 ? "am" : "pm");
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * This class flattens the candidate sections of every course into one table and precomputes,
+ * for every section, which other sections it can be scheduled together with. The scheduler can
+ * then narrow down the remaining choices by intersecting bitsets instead of checking every
+ * placed section again at each step of the search.
+ *
+ * Sections of the same course that meet at exactly the same times are interchangeable for the
+ * search. The first section of each such group is its representative, and the search only has
+ * to branch on representatives. The other members are filled in when results are built.
+ */
+public class CompatibilityMatrix {
+  // All candidate sections, grouped by course in the order the courses were given.
+  private final Section[] sections;
+  // courseStarts[i] is the index of the first section of course i. The last entry holds the total
+  // number of sections, so course i covers the indices [courseStarts[i], courseStarts[i + 1]).
+  private final int[] courseStarts;
+  // courses[i] is the index of the course that section i belongs to.
+  private final int[] courses;
+  // compatible[i] has bit j set if sections i and j belong to different courses and don't
+  // conflict with each other.
+  private final BitSet[] compatible;
+  // representatives[i] is the index of the first section of the same course with the same
+  // meeting times as section i.
+  private final int[] representatives;
+  // members[i] lists every section that section i represents, in order, or is null if section i
+  // isn't a representative.
+  private final int[][] members;
+  private final BitSet representativeSet;
+
+  public CompatibilityMatrix(ArrayList<ArrayList<Section>> courses) {
+    courseStarts = new int[courses.size() + 1];
+    for (int i = 0; i < courses.size(); i++) {
+      courseStarts[i + 1] = courseStarts[i] + courses.get(i).size();
+    }
+
+    sections = new Section[courseStarts[courses.size()]];
+    this.courses = new int[sections.length];
+    int index = 0;
+    for (int course = 0; course < courses.size(); course++) {
+      for (Section section : courses.get(course)) {
+        this.courses[index] = course;
+        sections[index++] = section;
+      }
+    }
+
+    representatives = new int[sections.length];
+    members = new int[sections.length][];
+    representativeSet = new BitSet(sections.length);
+    for (int course = 0; course < courses.size(); course++) {
+      HashMap<TimeMask, ArrayList<Integer>> groups = new HashMap<TimeMask, ArrayList<Integer>>();
+      for (int i = courseStarts[course]; i < courseStarts[course + 1]; i++) {
+        ArrayList<Integer> group = groups.get(sections[i].getTimeMask());
+        if (group == null) {
+          group = new ArrayList<Integer>();
+          groups.put(sections[i].getTimeMask(), group);
+          representativeSet.set(i);
+        }
+        group.add(i);
+        representatives[i] = group.get(0);
+      }
+      for (ArrayList<Integer> group : groups.values()) {
+        members[group.get(0)] = group.stream().mapToInt(Integer::intValue).toArray();
+      }
+    }
+
+    compatible = new BitSet[sections.length];
+    for (int i = 0; i < sections.length; i++) {
+      compatible[i] = new BitSet(sections.length);
+    }
+    // The relation is symmetric, so each pair of courses only has to be compared once. Only
+    // representatives are compared, every other section copies the answer of its representative,
+    // which always comes before it.
+    for (int course = 0; course < courses.size(); course++) {
+      for (int i = courseStarts[course]; i < courseStarts[course + 1]; i++) {
+        TimeMask mask = sections[i].getTimeMask();
+        for (int j = courseStarts[course + 1]; j < sections.length; j++) {
+          boolean isCompatible;
+          if (representatives[i] != i) {
+            isCompatible = compatible[representatives[i]].get(j);
+          } else if (representatives[j] != j) {
+            isCompatible = compatible[i].get(representatives[j]);
+          } else {
+            isCompatible = !mask.intersects(sections[j].getTimeMask());
+          }
+          if (isCompatible) {
+            compatible[i].set(j);
+            compatible[j].set(i);
+          }
+        }
+      }
+    }
+  }
+
+  public int getCourseCount() {
+    return courseStarts.length - 1;
+  }
+
+  public int getSectionCount() {
+    return sections.length;
+  }
+
+  public Section getSection(int index) {
+    return sections[index];
+  }
+
+  /**
+   * Returns the index of the course that the given section belongs to.
+   */
+  public int getCourse(int index) {
+    return courses[index];
+  }
+
+  /**
+   * Returns the index of the first section of the given course.
+   */
+  public int getCourseStart(int course) {
+    return courseStarts[course];
+  }
+
+  /**
+   * Returns the index one past the last section of the given course.
+   */
+  public int getCourseEnd(int course) {
+    return courseStarts[course + 1];
+  }
+
+  /**
+   * Returns the sections that can be scheduled together with the given section. The returned
+   * bitset is shared and must not be modified.
+   */
+  public BitSet getCompatible(int index) {
+    return compatible[index];
+  }
+
+  /**
+   * Returns a new bitset containing every section in the table.
+   */
+  public BitSet allSections() {
+    BitSet all = new BitSet(sections.length);
+    all.set(0, sections.length);
+    return all;
+  }
+
+  /**
+   * Returns a new bitset containing only the representative of every group of interchangeable
+   * sections.
+   */
+  public BitSet getRepresentatives() {
+    return (BitSet) representativeSet.clone();
+  }
+
+  /**
+   * Returns the representative of the given section. Sections with the same representative
+   * belong to the same course and meet at the same times.
+   */
+  public int getRepresentative(int index) {
+    return representatives[index];
+  }
+
+  /**
+   * Returns every section that the given representative stands for, including itself, in
+   * increasing order. The returned array is shared and must not be modified.
+   */
+  public int[] getMembers(int representative) {
+    return members[representative];
+  }
+
+  /**
+   * Returns a short string that identifies which sections are in the table and in what order.
+   * Two tables with the same fingerprint give section indices the same meaning.
+   */
+  public String getFingerprint() {
+    int hash = Arrays.hashCode(courseStarts);
+    for (Section section : sections) {
+      hash = 31 * hash + String.valueOf(section.getCourseId()).hashCode();
+      hash = 31 * hash + section.getSectionId().hashCode();
+    }
+    return Integer.toHexString(hash);
+  }
+
+  /**
+   * Creates a Schedule out of the given section indices. Sections are added in the order of
+   * their courses, no matter which order the indices are in.
+   * @param indices the indices of the sections, one for each course.
+   */
+  public Schedule buildSchedule(int[] indices) {
+    return IndexedSchedule.of(this, indices).toSchedule();
+  }
+}
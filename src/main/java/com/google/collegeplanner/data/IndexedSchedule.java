@@ -0,0 +1,155 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.Arrays;
+import org.json.simple.JSONObject;
+
+/**
+ * This class represents a schedule as the indices of its sections in a CompatibilityMatrix
+ * instead of as a list of Section objects. Sections can be pushed and popped in constant time,
+ * the hash is kept up to date as that happens, and two schedules over the same matrix are
+ * compared by index. Section objects are only looked up when the schedule is serialized.
+ *
+ * A schedule holds at most one section per course. Two schedules are equal if they hold the
+ * same sections, no matter in which order the sections were pushed.
+ */
+public final class IndexedSchedule {
+  private final CompatibilityMatrix matrix;
+  // The indices of the sections in the order they were pushed. Only the first size entries are
+  // in use.
+  private final int[] indices;
+  // byCourse[i] is the index of the section picked for course i, or -1 if there is none.
+  private final int[] byCourse;
+  private int size;
+  // The sum of the mixed indices of every section, which doesn't depend on the push order.
+  private int hash;
+
+  public IndexedSchedule(CompatibilityMatrix matrix) {
+    this.matrix = matrix;
+    indices = new int[matrix.getCourseCount()];
+    byCourse = new int[matrix.getCourseCount()];
+    Arrays.fill(byCourse, -1);
+  }
+
+  public IndexedSchedule(IndexedSchedule schedule) {
+    matrix = schedule.matrix;
+    indices = schedule.indices.clone();
+    byCourse = schedule.byCourse.clone();
+    size = schedule.size;
+    hash = schedule.hash;
+  }
+
+  /**
+   * Creates a schedule out of the given section indices, pushed in order.
+   */
+  static IndexedSchedule of(CompatibilityMatrix matrix, int[] path) {
+    IndexedSchedule schedule = new IndexedSchedule(matrix);
+    for (int index : path) {
+      schedule.push(index);
+    }
+    return schedule;
+  }
+
+  /**
+   * Adds the section with the given index to the schedule. The schedule doesn't check for
+   * conflicts, the search has already done that.
+   * @throws IllegalStateException if the schedule already has a section of the same course.
+   */
+  public void push(int index) throws IllegalStateException {
+    int course = matrix.getCourse(index);
+    if (byCourse[course] != -1) {
+      throw new IllegalStateException("Schedule already has a section of this course.");
+    }
+    byCourse[course] = index;
+    indices[size++] = index;
+    hash += mix(index);
+  }
+
+  /**
+   * Removes the section that was pushed last. Does nothing if the schedule is empty.
+   */
+  public void pop() {
+    if (size == 0) {
+      return;
+    }
+    int index = indices[--size];
+    byCourse[matrix.getCourse(index)] = -1;
+    hash -= mix(index);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the index of the section picked for the given course, or -1 if there is none.
+   */
+  public int getSectionIndex(int course) {
+    return byCourse[course];
+  }
+
+  /**
+   * Creates a Schedule with the same sections, in the order of their courses.
+   */
+  public Schedule toSchedule() {
+    Schedule schedule = new Schedule();
+    for (int index : byCourse) {
+      if (index != -1) {
+        schedule.addClass(matrix.getSection(index));
+      }
+    }
+    return schedule;
+  }
+
+  /**
+   * Returns the same JSON as Schedule.toJSON without creating a Schedule.
+   */
+  public JSONObject toJSON() {
+    JSONObject output = new JSONObject();
+    for (int index : byCourse) {
+      if (index != -1) {
+        for (Section part : matrix.getSection(index).getParts()) {
+          output.put(part.getCourseId(), part.getSectionId());
+        }
+      }
+    }
+    return output;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof IndexedSchedule)) {
+      return false;
+    }
+    IndexedSchedule schedule = (IndexedSchedule) other;
+    return schedule.matrix == matrix && schedule.size == size && schedule.hash == hash
+        && Arrays.equals(schedule.byCourse, byCourse);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Spreads the bits of a section index so that sums of different sets of indices rarely
+   * collide.
+   */
+  private static int mix(int index) {
+    int mixed = index * 0x9E3779B9;
+    return mixed ^ (mixed >>> 16);
+  }
+}
@@ -19,12 +19,9 @@ import com.google.gson.annotations.SerializedName;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.time.DayOfWeek;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoField;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -35,10 +32,10 @@ import org.json.simple.JSONObject;
  * discussion, are two separate meetings for the same class.
  */
 public class Meeting {
-  // days is the list of DayOfWeek objects used for the algorithm. It's not in the format that we
-  // want to be serialized into json to get sent into the front end however. The 'transient' keyword
+  // time holds the days and times used for the algorithm. It's shared by every meeting in the
+  // same time block, so only room and building belong to this meeting. The 'transient' keyword
   // keeps this variable from getting serialized by Gson.
-  private transient ArrayList<DayOfWeek> days;
+  private transient MeetingTime time;
   // daysString gets serialized into json and is in the correct format to be rendered on the front
   // end. It doesn't get used by the algorithm. Example, 'MThF'.
   @SerializedName("days") private String daysString;
@@ -49,29 +46,27 @@ public class Meeting {
 
   public Meeting(String days, String room, String building, String startTime, String endTime)
       throws ParseException {
-    this.days = new ArrayList<DayOfWeek>();
     this.daysString = days;
     this.room = room;
     this.building = building;
     if (startTime != "") {
-      this.startTime = parseTime(startTime);
+      this.startTime = MeetingFormat.parseTime(startTime);
     }
     if (endTime != "") {
-      this.endTime = parseTime(endTime);
+      this.endTime = MeetingFormat.parseTime(endTime);
     }
 
-    assignDays(days);
+    assignTime(days);
   }
 
   public Meeting(JSONObject json) throws ParseException {
-    this.days = new ArrayList<DayOfWeek>();
     this.daysString = (String) json.get("days");
-    this.startTime = parseTime((String) json.get("start_time"));
-    this.endTime = parseTime((String) json.get("end_time"));
+    this.startTime = MeetingFormat.parseTime((String) json.get("start_time"));
+    this.endTime = MeetingFormat.parseTime((String) json.get("end_time"));
     this.room = (String) json.get("room");
     this.building = (String) json.get("building");
 
-    assignDays((String) json.get("days"));
+    assignTime((String) json.get("days"));
   }
 
   public Meeting(EmbeddedEntity meetingEntity) throws ParseException {
@@ -79,100 +74,38 @@ public class Meeting {
     this.endTime = ((Long) meetingEntity.getProperty("end_time")).intValue();
     this.room = (String) meetingEntity.getProperty("room");
     this.building = (String) meetingEntity.getProperty("building");
-
-    this.days = new ArrayList<DayOfWeek>();
     this.daysString = (String) meetingEntity.getProperty("days");
 
-    assignDays((String) meetingEntity.getProperty("days"));
+    assignTime((String) meetingEntity.getProperty("days"));
   }
 
   /**
-   * Convert 12-hour time to just minutes as an int.
-   * @param time The 12-hour time string eg. 12:30pm.
+   * Creates a meeting at an already known time.
    */
-  private int parseTime(String time) throws ParseException {
-    if (time == null || time == "") {
-      throw new ParseException("Invalid time format.", 0);
-    }
-    time = time.toUpperCase();
-
-    // Parse the 24-hour time to get the hours and minutes
-    LocalTime localTime;
-    int hours;
-    int minutes;
-    try {
-      localTime = LocalTime.parse(time, DateTimeFormatter.ofPattern("h:mma"));
-      hours = localTime.get(ChronoField.CLOCK_HOUR_OF_DAY);
-      minutes = localTime.get(ChronoField.MINUTE_OF_HOUR);
-    } catch (DateTimeParseException e) {
-      throw new ParseException("Invalid time format.", 0);
-    }
-
-    // Convert the hours and minutes into just minutes
-    return 60 * hours + minutes;
+  Meeting(String daysString, String room, String building, MeetingTime time) {
+    this.daysString = daysString;
+    this.room = room;
+    this.building = building;
+    this.startTime = time.getStartTime();
+    this.endTime = time.getEndTime();
+    this.time = time;
   }
 
   /**
-   * Parses a string indicating which days have meetings and assigns the result to 'days'.
+   * Parses a string indicating which days have meetings and looks up the shared time of this
+   * meeting.
    * @param days The string containing the days that have meetings.
    */
-  private void assignDays(String days) throws ParseException {
-    if (days.toUpperCase().contains("M")) {
-      this.days.add(DayOfWeek.MONDAY);
-    }
-    if (days.toUpperCase().contains("TU")) {
-      this.days.add(DayOfWeek.TUESDAY);
-    }
-    if (days.toUpperCase().contains("W")) {
-      this.days.add(DayOfWeek.WEDNESDAY);
-    }
-    if (days.toUpperCase().contains("TH")) {
-      this.days.add(DayOfWeek.THURSDAY);
-    }
-    if (days.toUpperCase().contains("F")) {
-      this.days.add(DayOfWeek.FRIDAY);
-    }
-    if (days.toUpperCase().contains("SA") || days.toUpperCase().contains("SU")) {
-      // Since this is an academic scheduler, meetings cannot happen on weekends.
-      throw new ParseException("Invalid Day, no Weekends on Academic Calendar", 0);
-    }
+  private void assignTime(String days) throws ParseException {
+    time = MeetingTime.of(MeetingFormat.parseDays(days), startTime, endTime);
   }
 
   public boolean conflictsWith(Meeting other) {
-    // Checks to see if the two meetings occur on the same day
-    // If not, no need to check the time as they cannot conflict
-    boolean canSkip = true;
-    for (DayOfWeek day : other.getDays()) {
-      if (days.contains(day)) {
-        canSkip = false;
-        break;
-      }
-    }
-
-    if (canSkip) {
-      return false;
-    }
-
-    // Checks to see if this meeting's start time happens after the other meeting's start time
-    if (startTime > other.getStartTime()) {
-      // Checks to see if this meeting's start time happens after the other meeting's end time
-      if (startTime >= other.getEndTime()) {
-        // Two meetings do not conflict as this meeting occurs after the other meeting
-        return false;
-      }
-    } else {
-      // Checks to see if this meeting's end time happens before the other meeting's start time
-      if (endTime <= other.getStartTime()) {
-        // Two meetings do not conflict as this meeting occurs before the other meetings
-        return false;
-      }
-    }
-
-    return true;
+    return time.conflictsWith(other.getTime());
   }
 
-  public ArrayList<DayOfWeek> getDays() {
-    return days;
+  public List<DayOfWeek> getDays() {
+    return time.getDays();
   }
 
   public String getRoom() {
@@ -203,10 +136,30 @@ public class Meeting {
     return daysString;
   }
 
+  public MeetingTime getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the slots of the week this meeting occupies. The mask is shared and must not be
+   * modified.
+   */
+  public TimeMask getTimeMask() {
+    return time.getTimeMask();
+  }
+
+  /**
+   * Returns true if the other meeting takes place at the same time in the same room.
+   */
+  public boolean isDuplicateOf(Meeting other) {
+    return time == other.time && Objects.equals(room, other.room)
+        && Objects.equals(building, other.building);
+  }
+
   @Override
   public String toString() {
     String output = "";
-    for (DayOfWeek str : days) {
+    for (DayOfWeek str : getDays()) {
       output += str + " ";
     }
 
@@ -229,6 +182,7 @@ public class Meeting {
 
   public String getDaysAsString() {
     String daysString = "";
+    List<DayOfWeek> days = getDays();
     if (days.contains(DayOfWeek.MONDAY)) {
       daysString += "M";
     }
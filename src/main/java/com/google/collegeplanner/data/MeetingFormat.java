@@ -0,0 +1,114 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.time.DayOfWeek;
+
+/*
+ * This class parses the time and day strings of UMD meetings, e.g. "10:00am" and "MWF". Every
+ * meeting is parsed on ingest and whenever a section is read back from Datastore, so the strings
+ * are read in a single pass without building formatters or uppercased copies.
+ */
+final class MeetingFormat {
+  private MeetingFormat() {}
+
+  /**
+   * Converts 12-hour time to minutes after midnight. The hour has one or more digits, the minutes
+   * have exactly two and the am/pm suffix may be in any case.
+   *
+   * Like the java.time based parser this replaces, 12am is read as hour 24 rather than 0. No
+   * meetings are scheduled at midnight, and it keeps an end time of 12:00am after the start time.
+   * @param time The 12-hour time string eg. 12:30pm.
+   */
+  static int parseTime(String time) throws ParseException {
+    if (time == null) {
+      throw new ParseException("Invalid time format.", 0);
+    }
+    int length = time.length();
+    int position = 0;
+    int hours = 0;
+    while (position < length && isDigit(time.charAt(position))) {
+      hours = hours * 10 + time.charAt(position) - '0';
+      position++;
+      if (hours > 12) {
+        throw new ParseException("Invalid time format.", position - 1);
+      }
+    }
+    if (position == 0) {
+      throw new ParseException("Invalid time format.", 0);
+    }
+    if (length - position != 5 || time.charAt(position) != ':'
+        || !isDigit(time.charAt(position + 1)) || !isDigit(time.charAt(position + 2))) {
+      throw new ParseException("Invalid time format.", position);
+    }
+    int minutes = (time.charAt(position + 1) - '0') * 10 + time.charAt(position + 2) - '0';
+    if (minutes > 59) {
+      throw new ParseException("Invalid time format.", position + 1);
+    }
+
+    char amPm = Character.toUpperCase(time.charAt(position + 3));
+    if ((amPm != 'A' && amPm != 'P') || Character.toUpperCase(time.charAt(position + 4)) != 'M') {
+      throw new ParseException("Invalid time format.", position + 3);
+    }
+    // Hour 0 is accepted as another way to write 12, like java.time does.
+    if (hours == 12) {
+      hours = 0;
+    }
+    if (amPm == 'P') {
+      hours += 12;
+    } else if (hours == 0) {
+      hours = 24;
+    }
+    return 60 * hours + minutes;
+  }
+
+  /**
+   * Parses a string indicating which days have meetings, eg. "MWF" or "TuTh", in any case.
+   * @param days The string containing the days that have meetings.
+   * @return A bitmask with bit day.getValue() - 1 set for every day that has meetings.
+   */
+  static int parseDays(String days) throws ParseException {
+    int mask = 0;
+    int length = days.length();
+    for (int i = 0; i < length; i++) {
+      char day = Character.toUpperCase(days.charAt(i));
+      char next = i + 1 < length ? Character.toUpperCase(days.charAt(i + 1)) : 0;
+      if (day == 'M') {
+        mask |= bit(DayOfWeek.MONDAY);
+      } else if (day == 'W') {
+        mask |= bit(DayOfWeek.WEDNESDAY);
+      } else if (day == 'F') {
+        mask |= bit(DayOfWeek.FRIDAY);
+      } else if (day == 'T' && next == 'U') {
+        mask |= bit(DayOfWeek.TUESDAY);
+      } else if (day == 'T' && next == 'H') {
+        mask |= bit(DayOfWeek.THURSDAY);
+      } else if (day == 'S' && (next == 'A' || next == 'U')) {
+        // Since this is an academic scheduler, meetings cannot happen on weekends.
+        throw new ParseException("Invalid Day, no Weekends on Academic Calendar", i);
+      }
+    }
+    return mask;
+  }
+
+  static int bit(DayOfWeek day) {
+    return 1 << (day.getValue() - 1);
+  }
+
+  private static boolean isDigit(char character) {
+    return character >= '0' && character <= '9';
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * This class holds when a meeting takes place: its days, start time and end time. Most sections
+ * meet in one of a handful of standard time blocks, such as MWF 10:00-10:50, so instances are
+ * interned by of() and shared by every meeting in that block. Meetings with the same time are
+ * therefore the same object, which saves a day list and a time mask per meeting and lets conflict
+ * checks between them return without comparing the masks.
+ *
+ * Instances are immutable. Callers must not modify the returned time mask.
+ */
+public final class MeetingTime {
+  private static final DayOfWeek[] WEEKDAYS = {DayOfWeek.MONDAY, DayOfWeek.TUESDAY,
+      DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY};
+  // There are only a few hundred different meeting times in a semester, so the pool is not
+  // bounded.
+  private static final ConcurrentHashMap<Long, MeetingTime> POOL =
+      new ConcurrentHashMap<Long, MeetingTime>();
+
+  private final int startTime;
+  private final int endTime;
+  private final List<DayOfWeek> days;
+  private final TimeMask timeMask;
+
+  private MeetingTime(int dayBits, int startTime, int endTime) {
+    this.startTime = startTime;
+    this.endTime = endTime;
+
+    ArrayList<DayOfWeek> days = new ArrayList<DayOfWeek>();
+    timeMask = new TimeMask();
+    for (DayOfWeek day : WEEKDAYS) {
+      if ((dayBits & MeetingFormat.bit(day)) != 0) {
+        days.add(day);
+        timeMask.addInterval(day, startTime, endTime);
+      }
+    }
+    this.days = Collections.unmodifiableList(days);
+  }
+
+  /**
+   * Returns the shared instance for the given days and times.
+   * @param dayBits The days of the meeting as returned by MeetingFormat.parseDays.
+   * @param startTime The start of the meeting in minutes after midnight.
+   * @param endTime The end of the meeting in minutes after midnight.
+   */
+  static MeetingTime of(int dayBits, int startTime, int endTime) {
+    long key = ((long) dayBits << 42) | ((long) startTime << 21) | endTime;
+    return POOL.computeIfAbsent(key, unused -> new MeetingTime(dayBits, startTime, endTime));
+  }
+
+  public boolean conflictsWith(MeetingTime other) {
+    if (this == other) {
+      return !timeMask.isEmpty();
+    }
+    return timeMask.intersects(other.timeMask);
+  }
+
+  public List<DayOfWeek> getDays() {
+    return days;
+  }
+
+  public int getStartTime() {
+    return startTime;
+  }
+
+  public int getEndTime() {
+    return endTime;
+  }
+
+  public TimeMask getTimeMask() {
+    return timeMask;
+  }
+}
@@ -0,0 +1,242 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class finds the same schedules as SemesterScheduler, in the same order, but splits the
+ * search into ForkJoinPool tasks. The first one or two levels of the search are enumerated up
+ * front and every resulting partial schedule is searched by its own task.
+ */
+public class ParallelSemesterScheduler implements ScheduleEngine {
+  /**
+   * This variable represents the max number
+   * of schedules the scheduler will create.
+   */
+  private final int MAX_SCHEDULES = 15;
+  /**
+   * The search is split at the second level if the first level alone yields fewer tasks than
+   * this number for every available thread.
+   */
+  private final int TASKS_PER_THREAD = 4;
+  private ArrayList<ArrayList<Section>> sections;
+  private ArrayList<Schedule> possibleSchedules;
+  private ForkJoinPool pool;
+  private boolean mostConstrainedFirst;
+  // A cursor for the position after the last schedule in possibleSchedules, or null if the
+  // search has no more schedules.
+  private String nextCursor;
+  // Bounds the work of all tasks together, or null for no bound.
+  private SearchLimit limit;
+  private boolean truncated;
+
+  public ParallelSemesterScheduler(ArrayList<ArrayList<Section>> sections) {
+    this(sections, ForkJoinPool.commonPool());
+  }
+
+  public ParallelSemesterScheduler(ArrayList<ArrayList<Section>> sections, ForkJoinPool pool) {
+    this.sections = sections;
+    this.pool = pool;
+    possibleSchedules = new ArrayList<Schedule>();
+  }
+
+  /**
+   * Makes the search go through the courses with the fewest remaining sections first.
+   */
+  public void setMostConstrainedFirst(boolean mostConstrainedFirst) {
+    this.mostConstrainedFirst = mostConstrainedFirst;
+  }
+
+  /**
+   * Makes the search stop once the given limit is reached. The limit is shared by every task.
+   */
+  @Override
+  public void setSearchLimit(SearchLimit limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns true if the search stopped at the search limit before it found MAX_SCHEDULES
+   * schedules or ran out of them.
+   */
+  @Override
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public ArrayList<Schedule> getPossibleSchedules() {
+    if (!possibleSchedules.isEmpty() || sections.size() == 0) {
+      return possibleSchedules;
+    }
+
+    CompatibilityMatrix matrix = new CompatibilityMatrix(sections);
+    ArrayList<int[]> prefixes = getPrefixes(matrix, 1);
+    if (prefixes.size() < TASKS_PER_THREAD * pool.getParallelism() && sections.size() > 1) {
+      prefixes = getPrefixes(matrix, 2);
+    }
+
+    SearchBudget budget = new SearchBudget(prefixes.size());
+    ArrayList<ArrayList<int[]>> results = new ArrayList<ArrayList<int[]>>();
+    ArrayList<SearchTask> tasks = new ArrayList<SearchTask>();
+    int[][] stoppedAt = new int[prefixes.size()][];
+    for (int i = 0; i < prefixes.size(); i++) {
+      results.add(new ArrayList<int[]>());
+      tasks.add(new SearchTask(matrix, prefixes.get(i), i, budget, results.get(i), stoppedAt));
+    }
+    pool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    // Every task keeps its schedules in search order, so joining them in prefix order gives the
+    // same list the sequential search would have found. If the limit cut a task short, the
+    // schedules after it would leave a hole, so the join stops at that task.
+    PathExpander expander = new PathExpander(matrix);
+    for (int task = 0; task < results.size(); task++) {
+      for (int[] representatives : results.get(task)) {
+        expander.reset(representatives);
+        do {
+          int[] path = expander.getPath();
+          possibleSchedules.add(matrix.buildSchedule(path));
+          if (possibleSchedules.size() == MAX_SCHEDULES) {
+            nextCursor = ScheduleCursor.encode(matrix, mostConstrainedFirst, path);
+            return possibleSchedules;
+          }
+        } while (expander.advance());
+      }
+      if (stoppedAt[task] != null) {
+        // Every schedule the task found was returned, so the next search can start where the
+        // task stopped instead of after its last schedule.
+        truncated = true;
+        nextCursor = ScheduleCursor.encodePosition(matrix, mostConstrainedFirst, stoppedAt[task]);
+        return possibleSchedules;
+      }
+    }
+    return possibleSchedules;
+  }
+
+  /**
+   * Returns a cursor that continues the search after the schedules returned by
+   * getPossibleSchedules, or null if all of them were returned. The cursor can be passed to
+   * SemesterScheduler.iterator.
+   */
+  @Override
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Returns every feasible partial schedule of the given depth, in search order.
+   */
+  private ArrayList<int[]> getPrefixes(CompatibilityMatrix matrix, int depth) {
+    ArrayList<int[]> prefixes = new ArrayList<int[]>();
+    int prefixLength = Math.min(depth, sections.size());
+    ScheduleSearch search = new ScheduleSearch(matrix, mostConstrainedFirst);
+    search.run(new int[0], prefixLength, path -> {
+      prefixes.add(Arrays.copyOf(path, prefixLength));
+      return true;
+    });
+    return prefixes;
+  }
+
+  /**
+   * Keeps track of how many schedules each task found so that tasks whose results can't make it
+   * into the first MAX_SCHEDULES schedules stop early.
+   */
+  private class SearchBudget {
+    private final AtomicIntegerArray found;
+    // The lowest task index at which the tasks before it, including itself, have found
+    // MAX_SCHEDULES schedules. Tasks after it don't have to run any longer.
+    private final AtomicInteger cutoff;
+
+    SearchBudget(int taskCount) {
+      found = new AtomicIntegerArray(taskCount);
+      cutoff = new AtomicInteger(taskCount);
+    }
+
+    boolean isNeeded(int task) {
+      return task <= cutoff.get();
+    }
+
+    /**
+     * Records that the given task found count more schedules.
+     */
+    void recordSchedules(int task, int count) {
+      found.addAndGet(task, count);
+      int total = 0;
+      for (int i = 0; i < cutoff.get(); i++) {
+        total += found.get(i);
+        if (total >= MAX_SCHEDULES) {
+          cutoff.accumulateAndGet(i, Math::min);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Searches every schedule that starts with a given prefix.
+   */
+  private class SearchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final CompatibilityMatrix matrix;
+    private final int[] prefix;
+    private final int index;
+    private final SearchBudget budget;
+    private final ArrayList<int[]> results;
+    // stoppedAt[index] is set to the search position if the search limit stopped this task
+    // before it was done.
+    private final int[][] stoppedAt;
+
+    SearchTask(CompatibilityMatrix matrix, int[] prefix, int index, SearchBudget budget,
+        ArrayList<int[]> results, int[][] stoppedAt) {
+      this.matrix = matrix;
+      this.prefix = prefix;
+      this.index = index;
+      this.budget = budget;
+      this.results = results;
+      this.stoppedAt = stoppedAt;
+    }
+
+    @Override
+    protected void compute() {
+      ScheduleSearch search = new ScheduleSearch(matrix, mostConstrainedFirst);
+      BooleanSupplier limitCheck = limit == null ? () -> false : limit.newCheck();
+      search.setStopCondition(() -> !budget.isNeeded(index) || limitCheck.getAsBoolean());
+      int[] scheduleCount = new int[1];
+      search.run(prefix, sections.size(), path -> {
+        results.add(path.clone());
+        // A path stands for several schedules when its sections have interchangeable members.
+        int count = (int) Math.min(PathExpander.countPaths(matrix, path), MAX_SCHEDULES);
+        scheduleCount[0] += count;
+        budget.recordSchedules(index, count);
+        return scheduleCount[0] < MAX_SCHEDULES;
+      });
+      if (search.wasStopped() && budget.isNeeded(index) && scheduleCount[0] < MAX_SCHEDULES) {
+        stoppedAt[index] = search.getPosition();
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.Arrays;
+
+/**
+ * This class turns a path of representatives found by the search into the paths of concrete
+ * sections it stands for. The concrete paths are produced one at a time, with the last level
+ * changing fastest, so large groups of interchangeable sections are never listed up front.
+ */
+class PathExpander {
+  private final CompatibilityMatrix matrix;
+  // members[i] holds the sections that can be picked at level i.
+  private final int[][] members;
+  // position[i] is the index into members[i] of the section currently picked at level i.
+  private final int[] position;
+  private final int[] path;
+
+  PathExpander(CompatibilityMatrix matrix) {
+    this.matrix = matrix;
+    members = new int[matrix.getCourseCount()][];
+    position = new int[matrix.getCourseCount()];
+    path = new int[matrix.getCourseCount()];
+  }
+
+  /**
+   * Starts expanding the given path of representatives. Afterwards getPath returns its first
+   * concrete path.
+   */
+  void reset(int[] representatives) {
+    for (int i = 0; i < path.length; i++) {
+      members[i] = matrix.getMembers(representatives[i]);
+      position[i] = 0;
+      path[i] = members[i][0];
+    }
+  }
+
+  /**
+   * Moves to the given concrete path of the current expansion.
+   * @throws IllegalArgumentException if the path isn't part of the current expansion.
+   */
+  void seek(int[] target) throws IllegalArgumentException {
+    for (int i = 0; i < path.length; i++) {
+      int index = Arrays.binarySearch(members[i], target[i]);
+      if (index < 0) {
+        throw new IllegalArgumentException("Path is not part of the expansion.");
+      }
+      position[i] = index;
+      path[i] = target[i];
+    }
+  }
+
+  /**
+   * Moves on to the next concrete path. Returns false once every one has been produced.
+   */
+  boolean advance() {
+    for (int i = path.length - 1; i >= 0; i--) {
+      if (position[i] + 1 < members[i].length) {
+        path[i] = members[i][++position[i]];
+        return true;
+      }
+      position[i] = 0;
+      path[i] = members[i][0];
+    }
+    return false;
+  }
+
+  /**
+   * Returns the current concrete path. The array is reused, so it has to be copied if it is kept.
+   */
+  int[] getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the number of concrete paths that the given path of representatives stands for, or
+   * Long.MAX_VALUE if there are more than that.
+   */
+  static long countPaths(CompatibilityMatrix matrix, int[] representatives) {
+    long count = 1;
+    for (int representative : representatives) {
+      try {
+        count = Math.multiplyExact(count, matrix.getMembers(representative).length);
+      } catch (ArithmeticException e) {
+        return Long.MAX_VALUE;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,280 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class finds schedules by encoding the choice of sections as a SAT problem: one variable
+ * per section, a clause that picks at least one section of every course, clauses that forbid two
+ * sections of the same course and clauses that forbid every pair of conflicting sections. Every
+ * model of the clauses is a schedule, and each one is blocked after it is found so that the
+ * solver moves on to the next.
+ *
+ * Unlike backtracking, the solver learns a clause from every dead end it reaches, so it doesn't
+ * run into the same combination of sections twice. A step of the solver costs much more than a
+ * step of the bitset search in ScheduleSearch though. The schedules come in a different order
+ * than SemesterScheduler's, and cursors of the two aren't interchangeable.
+ */
+public class SatScheduler implements ScheduleEngine {
+  /**
+   * This variable represents the max number
+   * of schedules the scheduler will create.
+   */
+  private final int MAX_SCHEDULES = 15;
+  /**
+   * getBestSchedules ranks at most this many models. The solver is steered towards sections with
+   * few seat penalties, but unlike SemesterScheduler it doesn't prove that no better schedule
+   * exists beyond them.
+   */
+  private final int BEST_CANDIDATES = 1000;
+  private ArrayList<ArrayList<Section>> sections;
+  private ArrayList<Schedule> possibleSchedules;
+  // The model and offset the page to return starts at.
+  private long[] position = new long[2];
+  // Built on first use, since every search of this scheduler needs the same one.
+  private CompatibilityMatrix matrix;
+  private String nextCursor;
+  // Bounds the work of every search this scheduler runs, or null for no bound.
+  private SearchLimit limit;
+  private boolean truncated;
+
+  public SatScheduler(ArrayList<ArrayList<Section>> sections) {
+    this.sections = sections;
+    possibleSchedules = new ArrayList<Schedule>();
+  }
+
+  /**
+   * Makes getPossibleSchedules return the page after the one that produced the given cursor.
+   * Getting there means finding the models of the earlier pages again, so later pages take
+   * longer.
+   * @param cursor A cursor returned by getNextCursor, or null for the first page.
+   * @throws IllegalArgumentException if the cursor is malformed or belongs to other courses.
+   */
+  public void setCursor(String cursor) throws IllegalArgumentException {
+    position = cursor == null ? new long[2] : ScheduleCursor.decodeModel(getMatrix(), cursor);
+  }
+
+  /**
+   * Throws if the given cursor can't be one that getNextCursor returned. Unlike setCursor, it
+   * doesn't check which courses the cursor belongs to, so it can run before they are loaded.
+   */
+  public static void checkCursor(String cursor) throws IllegalArgumentException {
+    ScheduleCursor.checkFormat(cursor, true);
+  }
+
+  @Override
+  public void setSearchLimit(SearchLimit limit) {
+    this.limit = limit;
+  }
+
+  @Override
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Returns a page of schedules. Sections with the same meeting times are interchangeable, so the
+   * solver only picks between representatives and every model is expanded into the schedules it
+   * stands for.
+   */
+  @Override
+  public ArrayList<Schedule> getPossibleSchedules() {
+    if (!possibleSchedules.isEmpty() || sections.size() == 0) {
+      return possibleSchedules;
+    }
+
+    CompatibilityMatrix matrix = getMatrix();
+    SatSolver solver = encode(matrix, matrix.getRepresentatives());
+    BooleanSupplier stop = limit == null ? () -> false : limit.newCheck();
+    PathExpander expander = new PathExpander(matrix);
+    int[] representatives = new int[matrix.getCourseCount()];
+
+    for (long model = 0; ; model++) {
+      SatSolver.Result result = solver.solve(stop);
+      if (result == SatSolver.Result.UNKNOWN) {
+        truncated = true;
+        // A search that stopped while it was finding the models of earlier pages again hasn't
+        // got past the cursor it was given, so the next request starts there again.
+        if (model <= position[0]) {
+          nextCursor = ScheduleCursor.encodeModel(matrix, position[0], position[1]);
+        } else {
+          nextCursor = ScheduleCursor.encodeModel(matrix, model, 0);
+        }
+        return possibleSchedules;
+      } else if (result == SatSolver.Result.UNSATISFIABLE) {
+        return possibleSchedules;
+      }
+      readModel(matrix, solver, representatives);
+      block(solver, representatives);
+      if (model < position[0]) {
+        continue;
+      }
+
+      expander.reset(representatives);
+      long offset = 0;
+      boolean more = true;
+      for (; more && model == position[0] && offset < position[1]; offset++) {
+        more = expander.advance();
+      }
+      while (more) {
+        possibleSchedules.add(matrix.buildSchedule(expander.getPath()));
+        offset++;
+        more = expander.advance();
+        if (possibleSchedules.size() == MAX_SCHEDULES) {
+          nextCursor = more ? ScheduleCursor.encodeModel(matrix, model, offset)
+                            : ScheduleCursor.encodeModel(matrix, model + 1, 0);
+          return possibleSchedules;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the schedules with the lowest cost under the given preferences among the first
+   * BEST_CANDIDATES models, from best to worst. The solver tries sections with lower seat
+   * penalties first, so the cheapest schedules tend to be among the first models. If there are
+   * more models than that, the ranking is only a heuristic and the result is truncated.
+   * @param preferences How much each property of a schedule is penalized.
+   */
+  public ArrayList<Schedule> getBestSchedules(SchedulePreferences preferences) {
+    ArrayList<Schedule> bestSchedules = new ArrayList<Schedule>();
+    if (sections.size() == 0) {
+      return bestSchedules;
+    }
+
+    // Interchangeable sections can still differ in open seats, so every section gets a variable.
+    CompatibilityMatrix matrix = getMatrix();
+    SatSolver solver = encode(matrix, matrix.allSections());
+    for (int i = 0; i < matrix.getSectionCount(); i++) {
+      solver.setActivity(i, -preferences.getSeatCost(matrix.getSection(i)));
+    }
+    BooleanSupplier stop = limit == null ? () -> false : limit.newCheck();
+    int[] path = new int[matrix.getCourseCount()];
+
+    ArrayList<Schedule> candidates = new ArrayList<Schedule>();
+    ArrayList<Double> costs = new ArrayList<Double>();
+    while (true) {
+      SatSolver.Result result = solver.solve(stop);
+      if (result != SatSolver.Result.SATISFIABLE) {
+        truncated = result == SatSolver.Result.UNKNOWN;
+        break;
+      } else if (candidates.size() == BEST_CANDIDATES) {
+        // A model beyond the candidates exists, so some schedules were never ranked.
+        truncated = true;
+        break;
+      }
+      readModel(matrix, solver, path);
+      block(solver, path);
+      Schedule schedule = matrix.buildSchedule(path);
+      candidates.add(schedule);
+      costs.add(preferences.getCost(schedule));
+    }
+
+    // Ties go to the schedule found first, like in ScheduleScorer.
+    ArrayList<Integer> order = new ArrayList<Integer>();
+    for (int i = 0; i < candidates.size(); i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparingDouble(costs::get));
+    for (int i = 0; i < order.size() && i < MAX_SCHEDULES; i++) {
+      bestSchedules.add(candidates.get(order.get(i)));
+    }
+    return bestSchedules;
+  }
+
+  private CompatibilityMatrix getMatrix() {
+    if (matrix == null) {
+      matrix = new CompatibilityMatrix(sections);
+    }
+    return matrix;
+  }
+
+  /**
+   * Builds the clauses that pick exactly one of the given sections of every course, such that
+   * no two picked sections conflict. Variable i stands for section i of the matrix.
+   */
+  private static SatSolver encode(CompatibilityMatrix matrix, BitSet candidates) {
+    SatSolver solver = new SatSolver(matrix.getSectionCount());
+    for (int course = 0; course < matrix.getCourseCount(); course++) {
+      ArrayList<Integer> literals = new ArrayList<Integer>();
+      for (int i = matrix.getCourseStart(course); i < matrix.getCourseEnd(course); i++) {
+        if (candidates.get(i)) {
+          literals.add(SatSolver.positive(i));
+        } else {
+          solver.addClause(SatSolver.negative(i));
+        }
+      }
+      solver.addClause(literals.stream().mapToInt(Integer::intValue).toArray());
+
+      for (int first = 0; first < literals.size(); first++) {
+        for (int second = first + 1; second < literals.size(); second++) {
+          solver.addClause(literals.get(first) ^ 1, literals.get(second) ^ 1);
+        }
+      }
+    }
+
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      BitSet compatible = matrix.getCompatible(i);
+      int course = matrix.getCourse(i);
+      for (int j = candidates.nextSetBit(matrix.getCourseEnd(course)); j >= 0;
+           j = candidates.nextSetBit(j + 1)) {
+        if (!compatible.get(j)) {
+          solver.addClause(SatSolver.negative(i), SatSolver.negative(j));
+        }
+      }
+    }
+
+    // Picking a section rules out the rest of its course at once, which is faster than ruling
+    // them out one at a time.
+    for (int i = 0; i < matrix.getSectionCount(); i++) {
+      solver.setPhase(i, true);
+    }
+    return solver;
+  }
+
+  /**
+   * Stores the section the model picks for every course in path.
+   */
+  private static void readModel(CompatibilityMatrix matrix, SatSolver solver, int[] path) {
+    for (int course = 0; course < matrix.getCourseCount(); course++) {
+      for (int i = matrix.getCourseStart(course); i < matrix.getCourseEnd(course); i++) {
+        if (solver.isTrue(i)) {
+          path[course] = i;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Rules out the schedule with the given sections in every later model.
+   */
+  private static void block(SatSolver solver, int[] path) {
+    int[] clause = new int[path.length];
+    for (int i = 0; i < path.length; i++) {
+      clause[i] = SatSolver.negative(path[i]);
+    }
+    solver.addClause(clause);
+  }
+}
@@ -0,0 +1,450 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A small conflict-driven clause learning SAT solver. Clauses are watched by two literals, a
+ * conflict is turned into a learnt clause at the first unique implication point, the next
+ * variable to branch on is the one with the highest activity, where variables are bumped when
+ * they take part in a conflict, and the search restarts after a Luby sequence of conflicts.
+ *
+ * Variable v has the literals positive(v) and negative(v). Clauses can be added between calls to
+ * solve, which makes it possible to enumerate models by blocking each one that was found.
+ */
+class SatSolver {
+  enum Result { SATISFIABLE, UNSATISFIABLE, UNKNOWN }
+
+  private static final int RESTART_CONFLICTS = 100;
+  private static final double ACTIVITY_DECAY = 0.95;
+  private static final double MAX_ACTIVITY = 1e100;
+
+  private final int variableCount;
+  private final ArrayList<int[]> clauses = new ArrayList<int[]>();
+  // watches[literal] holds the clauses whose first or second literal is that literal. They are
+  // visited once it becomes false.
+  private final int[][] watches;
+  private final int[] watchCounts;
+
+  // values[v] is 1 if v is true, -1 if it is false and 0 if it is unassigned.
+  private final byte[] values;
+  private final int[] levels;
+  // reasons[v] is the clause that implied the value of v, or -1 for decisions and root facts.
+  private final int[] reasons;
+  private final boolean[] phases;
+  private final double[] activity;
+  private double activityIncrement = 1;
+
+  private final int[] trail;
+  private int trailSize;
+  // trailStarts[l] is the trail position where decision level l + 1 starts.
+  private final int[] trailStarts;
+  private int decisionLevel;
+  private int propagated;
+  // Set once the clauses can't be satisfied no matter what is added later.
+  private boolean inconsistent;
+
+  private final boolean[] seen;
+  // redundancy[v] caches whether a literal of v was redundant during the current analysis, with
+  // 1 for yes and -1 for no. checked lists the variables to reset afterwards.
+  private final byte[] redundancy;
+  private final int[] checked;
+  private int checkedCount;
+  private int backtrackLevel;
+
+  SatSolver(int variableCount) {
+    this.variableCount = variableCount;
+    watches = new int[2 * variableCount][];
+    watchCounts = new int[2 * variableCount];
+    for (int i = 0; i < watches.length; i++) {
+      watches[i] = new int[4];
+    }
+    values = new byte[variableCount];
+    levels = new int[variableCount];
+    reasons = new int[variableCount];
+    phases = new boolean[variableCount];
+    activity = new double[variableCount];
+    trail = new int[variableCount];
+    trailStarts = new int[variableCount + 1];
+    seen = new boolean[variableCount];
+    redundancy = new byte[variableCount];
+    checked = new int[variableCount];
+  }
+
+  static int positive(int variable) {
+    return variable << 1;
+  }
+
+  static int negative(int variable) {
+    return (variable << 1) | 1;
+  }
+
+  /**
+   * Sets the value the variable gets when the solver branches on it. Afterwards the solver
+   * remembers the last value the variable had instead.
+   */
+  void setPhase(int variable, boolean phase) {
+    phases[variable] = phase;
+  }
+
+  /**
+   * Sets the initial activity of the variable. Variables with a higher activity are branched on
+   * first, until conflicts change the order.
+   */
+  void setActivity(int variable, double value) {
+    activity[variable] = value;
+  }
+
+  /**
+   * Returns the value of the variable in the model found by the last call to solve that returned
+   * SATISFIABLE. Adding a clause discards the model.
+   */
+  boolean isTrue(int variable) {
+    return values[variable] > 0;
+  }
+
+  /**
+   * Adds a clause, which is satisfied if at least one of its literals is true.
+   */
+  void addClause(int... literals) {
+    backtrack(0);
+    if (inconsistent) {
+      return;
+    }
+
+    int[] sorted = literals.clone();
+    Arrays.sort(sorted);
+    int[] clause = new int[sorted.length];
+    int size = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      int literal = sorted[i];
+      int value = valueOf(literal);
+      if (value > 0 || (i > 0 && sorted[i - 1] == (literal ^ 1))) {
+        // The clause is already satisfied or contains both a literal and its negation.
+        return;
+      }
+      if (value == 0 && (size == 0 || clause[size - 1] != literal)) {
+        clause[size++] = literal;
+      }
+    }
+
+    if (size == 0) {
+      inconsistent = true;
+    } else if (size == 1) {
+      assign(clause[0], -1);
+      inconsistent = propagate() >= 0;
+    } else {
+      attach(Arrays.copyOf(clause, size));
+    }
+  }
+
+  /**
+   * Searches for a model of the clauses added so far.
+   * @param stop Checked before every decision. The search gives up with UNKNOWN once it returns
+   *     true.
+   */
+  Result solve(BooleanSupplier stop) {
+    backtrack(0);
+    if (inconsistent) {
+      return Result.UNSATISFIABLE;
+    }
+
+    int restarts = 0;
+    long conflictsLeft = luby(restarts) * RESTART_CONFLICTS;
+    while (true) {
+      int conflict = propagate();
+      if (conflict >= 0) {
+        if (decisionLevel == 0) {
+          inconsistent = true;
+          return Result.UNSATISFIABLE;
+        }
+        int[] learnt = analyze(conflict);
+        backtrack(backtrackLevel);
+        if (learnt.length == 1) {
+          assign(learnt[0], -1);
+        } else {
+          assign(learnt[0], attach(learnt));
+        }
+        decayActivity();
+        conflictsLeft--;
+        continue;
+      }
+
+      if (stop.getAsBoolean()) {
+        backtrack(0);
+        return Result.UNKNOWN;
+      }
+      if (conflictsLeft <= 0) {
+        backtrack(0);
+        conflictsLeft = luby(++restarts) * RESTART_CONFLICTS;
+        continue;
+      }
+
+      int variable = pickBranchVariable();
+      if (variable < 0) {
+        return Result.SATISFIABLE;
+      }
+      trailStarts[decisionLevel++] = trailSize;
+      assign(phases[variable] ? positive(variable) : negative(variable), -1);
+    }
+  }
+
+  /**
+   * Returns 1 if the literal is true, -1 if it is false and 0 if it is unassigned.
+   */
+  private int valueOf(int literal) {
+    int value = values[literal >> 1];
+    return (literal & 1) == 0 ? value : -value;
+  }
+
+  private void assign(int literal, int reason) {
+    int variable = literal >> 1;
+    values[variable] = (byte) ((literal & 1) == 0 ? 1 : -1);
+    levels[variable] = decisionLevel;
+    reasons[variable] = reason;
+    trail[trailSize++] = literal;
+  }
+
+  /**
+   * Stores the clause and watches its first two literals. Returns the index of the clause.
+   */
+  private int attach(int[] clause) {
+    int index = clauses.size();
+    clauses.add(clause);
+    watch(clause[0], index);
+    watch(clause[1], index);
+    return index;
+  }
+
+  private void watch(int literal, int clause) {
+    if (watchCounts[literal] == watches[literal].length) {
+      watches[literal] = Arrays.copyOf(watches[literal], 2 * watchCounts[literal]);
+    }
+    watches[literal][watchCounts[literal]++] = clause;
+  }
+
+  /**
+   * Assigns every literal that the assigned ones imply. Returns the index of a clause whose
+   * literals are all false, or -1 if there is none.
+   */
+  private int propagate() {
+    while (propagated < trailSize) {
+      int falseLiteral = trail[propagated++] ^ 1;
+      int[] watching = watches[falseLiteral];
+      int count = watchCounts[falseLiteral];
+      int kept = 0;
+      int conflict = -1;
+      for (int i = 0; i < count; i++) {
+        int index = watching[i];
+        if (conflict >= 0) {
+          watching[kept++] = index;
+          continue;
+        }
+        int[] clause = clauses.get(index);
+        // Keep the false literal in the second position.
+        if (clause[0] == falseLiteral) {
+          clause[0] = clause[1];
+          clause[1] = falseLiteral;
+        }
+        if (valueOf(clause[0]) > 0) {
+          watching[kept++] = index;
+          continue;
+        }
+
+        boolean moved = false;
+        for (int k = 2; k < clause.length; k++) {
+          if (valueOf(clause[k]) >= 0) {
+            clause[1] = clause[k];
+            clause[k] = falseLiteral;
+            watch(clause[1], index);
+            moved = true;
+            break;
+          }
+        }
+        if (moved) {
+          continue;
+        }
+        watching[kept++] = index;
+        if (valueOf(clause[0]) < 0) {
+          conflict = index;
+        } else {
+          assign(clause[0], index);
+        }
+      }
+      watchCounts[falseLiteral] = kept;
+      if (conflict >= 0) {
+        propagated = trailSize;
+        return conflict;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the clause learnt from the given conflict, with the literal that becomes true after
+   * backtracking first. Sets backtrackLevel to the level to backtrack to.
+   */
+  private int[] analyze(int conflict) {
+    ArrayList<Integer> learnt = new ArrayList<Integer>();
+    learnt.add(0);
+    int pending = 0;
+    int literal = -1;
+    int position = trailSize - 1;
+    int reason = conflict;
+    do {
+      int[] clause = clauses.get(reason);
+      // The first literal of a reason clause is the one it implied.
+      for (int i = literal < 0 ? 0 : 1; i < clause.length; i++) {
+        int variable = clause[i] >> 1;
+        if (!seen[variable] && levels[variable] > 0) {
+          seen[variable] = true;
+          bumpActivity(variable);
+          if (levels[variable] >= decisionLevel) {
+            pending++;
+          } else {
+            learnt.add(clause[i]);
+          }
+        }
+      }
+      while (!seen[trail[position] >> 1]) {
+        position--;
+      }
+      literal = trail[position--];
+      reason = reasons[literal >> 1];
+      seen[literal >> 1] = false;
+      pending--;
+    } while (pending > 0);
+    learnt.set(0, literal ^ 1);
+
+    // A literal can be left out if the clause that implied it only contains literals that are
+    // in the learnt clause, fixed at the root or can be left out themselves.
+    ArrayList<Integer> minimized = new ArrayList<Integer>();
+    minimized.add(learnt.get(0));
+    seen[learnt.get(0) >> 1] = true;
+    for (int i = 1; i < learnt.size(); i++) {
+      if (!isRedundant(learnt.get(i))) {
+        minimized.add(learnt.get(i));
+      }
+    }
+    for (int learntLiteral : learnt) {
+      seen[learntLiteral >> 1] = false;
+    }
+    while (checkedCount > 0) {
+      redundancy[checked[--checkedCount]] = 0;
+    }
+    learnt = minimized;
+
+    int[] clause = new int[learnt.size()];
+    backtrackLevel = 0;
+    for (int i = 0; i < clause.length; i++) {
+      clause[i] = learnt.get(i);
+      // The literal from the highest remaining level is watched second.
+      if (i > 0 && levels[clause[i] >> 1] > backtrackLevel) {
+        backtrackLevel = levels[clause[i] >> 1];
+        clause[i] = clause[1];
+        clause[1] = learnt.get(i);
+      }
+    }
+    return clause;
+  }
+
+  /**
+   * Returns true if the literal follows from the literals marked as seen, because every other
+   * literal of the clause that implied it is seen, fixed at the root or itself redundant.
+   */
+  private boolean isRedundant(int literal) {
+    int variable = literal >> 1;
+    if (redundancy[variable] != 0) {
+      return redundancy[variable] > 0;
+    }
+    int reason = reasons[variable];
+    boolean redundant = reason >= 0;
+    if (redundant) {
+      int[] clause = clauses.get(reason);
+      for (int i = 1; i < clause.length && redundant; i++) {
+        int other = clause[i] >> 1;
+        redundant = seen[other] || levels[other] == 0 || isRedundant(clause[i]);
+      }
+    }
+    redundancy[variable] = (byte) (redundant ? 1 : -1);
+    checked[checkedCount++] = variable;
+    return redundant;
+  }
+
+  /**
+   * Undoes every assignment made above the given decision level.
+   */
+  private void backtrack(int level) {
+    if (decisionLevel <= level) {
+      return;
+    }
+    for (int i = trailSize - 1; i >= trailStarts[level]; i--) {
+      int variable = trail[i] >> 1;
+      phases[variable] = values[variable] > 0;
+      values[variable] = 0;
+    }
+    trailSize = trailStarts[level];
+    propagated = trailSize;
+    decisionLevel = level;
+  }
+
+  /**
+   * Returns the unassigned variable with the highest activity, or -1 if every one is assigned.
+   */
+  private int pickBranchVariable() {
+    int best = -1;
+    for (int variable = 0; variable < variableCount; variable++) {
+      if (values[variable] == 0 && (best < 0 || activity[variable] > activity[best])) {
+        best = variable;
+      }
+    }
+    return best;
+  }
+
+  private void bumpActivity(int variable) {
+    activity[variable] += activityIncrement;
+    if (activity[variable] > MAX_ACTIVITY) {
+      for (int i = 0; i < variableCount; i++) {
+        activity[i] /= MAX_ACTIVITY;
+      }
+      activityIncrement /= MAX_ACTIVITY;
+    }
+  }
+
+  private void decayActivity() {
+    activityIncrement /= ACTIVITY_DECAY;
+  }
+
+  /**
+   * Returns the i-th element (starting at 0) of the Luby sequence 1, 1, 2, 1, 1, 2, 4, ...
+   */
+  private static long luby(int i) {
+    int size = 1;
+    int sequence = 0;
+    while (size < i + 1) {
+      sequence++;
+      size = 2 * size + 1;
+    }
+    while (size - 1 != i) {
+      size = (size - 1) >> 1;
+      sequence--;
+      i = i % size;
+    }
+    return 1L << sequence;
+  }
+}
@@ -15,18 +15,24 @@
 package com.google.collegeplanner.data;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 public class Schedule {
   private ArrayList<Section> sections;
+  // occupied is the union of the time masks of every section in the schedule. Since sections in
+  // a schedule never overlap, a section's slots can be cleared again when it is removed.
+  private TimeMask occupied;
 
   public Schedule() {
     sections = new ArrayList<Section>();
+    occupied = new TimeMask();
   }
 
   public Schedule(Schedule schedule) {
     sections = new ArrayList<>(schedule.getSections());
+    occupied = new TimeMask(schedule.occupied);
   }
   /**
    * This method adds a section to the existing schedule of sections
@@ -41,6 +47,7 @@ public class Schedule {
     }
 
     sections.add(section);
+    occupied.or(section.getTimeMask());
 
     return true;
   }
@@ -52,24 +59,24 @@ public class Schedule {
    * @param section the other section this object is being compared with
    */
   private boolean conflictsWithSchedule(Section section) {
-    for (Section scheduledSection : sections) {
-      if (scheduledSection.conflictsWith(section)) {
-        return true;
-      }
-    }
-    return false;
+    return occupied.intersects(section.getTimeMask());
   }
 
   public ArrayList<Section> getSections() {
     return sections;
   }
 
+  public TimeMask getTimeMask() {
+    return occupied;
+  }
+
   /**
    * Removes the class that was last added to the schedule
    */
   public void removeLastClass() {
     if (sections.size() > 0) {
-      sections.remove(sections.size() - 1);
+      Section removed = sections.remove(sections.size() - 1);
+      occupied.andNot(removed.getTimeMask());
     }
   }
 
@@ -94,20 +101,27 @@ public class Schedule {
       return false;
     }
 
-    for (Section section : ((Schedule) other).getSections()) {
-      if (!sections.contains(section)) {
-        return false;
-      }
-    }
+    // Sections don't override equals, so this compares them by identity like contains would.
+    return new HashSet<Section>(sections).containsAll(((Schedule) other).getSections());
+  }
 
-    return true;
+  @Override
+  public int hashCode() {
+    // The sum doesn't depend on the order, just like equals.
+    int hash = 0;
+    for (Section section : sections) {
+      hash += section.hashCode();
+    }
+    return hash;
   }
 
   public JSONObject toJSON() {
     JSONObject output = new JSONObject();
 
     for (Section section : sections) {
-      output.put(section.getCourseId(), section.getSectionId());
+      for (Section part : section.getParts()) {
+        output.put(part.getCourseId(), part.getSectionId());
+      }
     }
 
     return output;
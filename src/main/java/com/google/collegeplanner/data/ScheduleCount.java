@@ -0,0 +1,55 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import org.json.simple.JSONObject;
+
+/*
+ * This class represents the number of possible schedules for a set of courses. If counting
+ * exactly took too long, the value is an estimate and margin is the half width of its 95%
+ * confidence interval. A value of Long.MAX_VALUE means there are at least that many schedules,
+ * and is never exact.
+ */
+public class ScheduleCount {
+  private final long value;
+  private final boolean exact;
+  private final long margin;
+
+  public ScheduleCount(long value, boolean exact, long margin) {
+    this.value = value;
+    this.exact = exact;
+    this.margin = margin;
+  }
+
+  public long getValue() {
+    return value;
+  }
+
+  public boolean isExact() {
+    return exact;
+  }
+
+  public long getMargin() {
+    return margin;
+  }
+
+  public JSONObject toJSON() {
+    JSONObject json = new JSONObject();
+    json.put("value", value);
+    json.put("exact", exact);
+    json.put("margin", margin);
+    return json;
+  }
+}
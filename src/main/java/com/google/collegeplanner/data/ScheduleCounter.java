@@ -0,0 +1,300 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class counts how many schedules exist for a list of courses without listing them.
+ *
+ * Courses whose sections never conflict with each other can be counted separately, so the
+ * courses are first split into groups that are connected by conflicts and the counts of the
+ * groups are multiplied. Within a group, the number of ways to finish a partial schedule only
+ * depends on which of the remaining sections' time slots are already taken, so those counts are
+ * remembered and reused. Sections of a course with the same meeting times are counted together.
+ *
+ * If exact counting takes longer than the time budget, the counter estimates the count instead
+ * by following random paths through the search and reports a 95% margin of error.
+ */
+public class ScheduleCounter {
+  private static final long DEFAULT_TIME_BUDGET_MILLIS = 200;
+  // The number of random paths followed to estimate a group of courses.
+  private static final int ESTIMATE_SAMPLES = 5000;
+  // Memoized counts are only kept for this many different states per group of courses.
+  private static final int MAX_MEMO_ENTRIES = 200000;
+  // 95% of a normal distribution lies within this many standard deviations of the mean.
+  private static final double Z_95 = 1.96;
+  // The deadline is only checked every this many steps, since reading the clock is slow.
+  private static final int STEPS_PER_CLOCK_CHECK = 1024;
+
+  private final ArrayList<ArrayList<Section>> sections;
+  private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+  private final Random random;
+
+  private long deadline;
+  private int steps;
+  private int memoEntries;
+  private boolean timedOut;
+
+  public ScheduleCounter(ArrayList<ArrayList<Section>> sections) {
+    this(sections, new Random(0));
+  }
+
+  public ScheduleCounter(ArrayList<ArrayList<Section>> sections, Random random) {
+    this.sections = sections;
+    this.random = random;
+  }
+
+  /**
+   * Sets how long exact counting may take before the counter falls back to an estimate.
+   */
+  public void setTimeBudget(long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  public ScheduleCount count() {
+    if (sections.size() == 0) {
+      return new ScheduleCount(0, true, 0);
+    }
+    for (ArrayList<Section> course : sections) {
+      if (course.isEmpty()) {
+        return new ScheduleCount(0, true, 0);
+      }
+    }
+
+    deadline = System.nanoTime() + timeBudgetMillis * 1000000;
+    long exactCount = 1;
+    double estimatedCount = 1;
+    // The squared relative errors of independent estimates add up when they are multiplied.
+    double relativeVariance = 0;
+    boolean exact = true;
+    for (int[] group : getConflictGroups()) {
+      long count = countExactly(group);
+      if (count == 0) {
+        return new ScheduleCount(0, true, 0);
+      } else if (count > 0 && count < Long.MAX_VALUE) {
+        exactCount = multiply(exactCount, count);
+        continue;
+      }
+      // The group took too long to count or has more schedules than a long can hold.
+
+      exact = false;
+      double[] estimate = estimate(group);
+      if (estimate[0] == 0) {
+        return new ScheduleCount(0, false, 0);
+      }
+      estimatedCount *= estimate[0];
+      relativeVariance += Math.pow(estimate[1] / estimate[0], 2);
+    }
+
+    // A product that saturated is only a lower bound of the count.
+    if (exact && exactCount < Long.MAX_VALUE) {
+      return new ScheduleCount(exactCount, true, 0);
+    }
+    double value = exactCount * estimatedCount;
+    return new ScheduleCount(
+        Math.round(value), false, Math.round(value * Math.sqrt(relativeVariance)));
+  }
+
+  /**
+   * Splits the courses into groups such that no section of one group conflicts with any section
+   * of another group.
+   */
+  private ArrayList<int[]> getConflictGroups() {
+    int[] parent = new int[sections.size()];
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+    }
+    for (int first = 0; first < sections.size(); first++) {
+      for (int second = first + 1; second < sections.size(); second++) {
+        if (find(parent, first) != find(parent, second) && coursesConflict(first, second)) {
+          parent[find(parent, second)] = find(parent, first);
+        }
+      }
+    }
+
+    HashMap<Integer, ArrayList<Integer>> groups = new HashMap<Integer, ArrayList<Integer>>();
+    ArrayList<Integer> roots = new ArrayList<Integer>();
+    for (int course = 0; course < sections.size(); course++) {
+      int root = find(parent, course);
+      if (!groups.containsKey(root)) {
+        groups.put(root, new ArrayList<Integer>());
+        roots.add(root);
+      }
+      groups.get(root).add(course);
+    }
+
+    ArrayList<int[]> result = new ArrayList<int[]>();
+    for (int root : roots) {
+      result.add(groups.get(root).stream().mapToInt(Integer::intValue).toArray());
+    }
+    return result;
+  }
+
+  private static int find(int[] parent, int course) {
+    while (parent[course] != course) {
+      parent[course] = parent[parent[course]];
+      course = parent[course];
+    }
+    return course;
+  }
+
+  /**
+   * Returns true if some section of the first course conflicts with some section of the second.
+   */
+  private boolean coursesConflict(int first, int second) {
+    for (Section section : sections.get(first)) {
+      for (Section other : sections.get(second)) {
+        if (section.conflictsWith(other)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of schedules for a group of courses, or -1 if the time budget ran out.
+   * Returns Long.MAX_VALUE if there are at least that many.
+   */
+  private long countExactly(int[] group) {
+    if (System.nanoTime() >= deadline) {
+      return -1;
+    }
+    // relevant[i] holds every slot used by a section of the courses from group[i] on.
+    TimeMask[] relevant = new TimeMask[group.length + 1];
+    relevant[group.length] = new TimeMask();
+    for (int i = group.length - 1; i >= 0; i--) {
+      relevant[i] = new TimeMask(relevant[i + 1]);
+      for (Section section : sections.get(group[i])) {
+        relevant[i].or(section.getTimeMask());
+      }
+    }
+
+    // timeCounts[i] maps every distinct time of a section of course group[i] to the number of
+    // sections that meet at that time.
+    ArrayList<HashMap<TimeMask, Long>> timeCounts = new ArrayList<HashMap<TimeMask, Long>>();
+    ArrayList<HashMap<TimeMask, Long>> memo = new ArrayList<HashMap<TimeMask, Long>>();
+    for (int i = 0; i < group.length; i++) {
+      HashMap<TimeMask, Long> counts = new HashMap<TimeMask, Long>();
+      for (Section section : sections.get(group[i])) {
+        counts.merge(section.getTimeMask(), 1L, Long::sum);
+      }
+      timeCounts.add(counts);
+      memo.add(new HashMap<TimeMask, Long>());
+    }
+    timedOut = false;
+    memoEntries = 0;
+    long count = countFrom(group.length, 0, new TimeMask(), relevant, timeCounts, memo);
+    return timedOut ? -1 : count;
+  }
+
+  /**
+   * Returns the number of ways to pick sections for the courses from the given level on.
+   * @param occupied the time taken by the sections picked for the earlier courses.
+   */
+  private long countFrom(int levels, int level, TimeMask occupied, TimeMask[] relevant,
+      ArrayList<HashMap<TimeMask, Long>> timeCounts, ArrayList<HashMap<TimeMask, Long>> memo) {
+    if (level == levels) {
+      return 1;
+    }
+    if (++steps % STEPS_PER_CLOCK_CHECK == 0 && System.nanoTime() > deadline) {
+      timedOut = true;
+    }
+    if (timedOut) {
+      return 0;
+    }
+
+    // Slots that none of the remaining sections use can't change the result.
+    TimeMask key = new TimeMask(occupied);
+    key.and(relevant[level]);
+    Long cached = memo.get(level).get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    long count = 0;
+    for (Map.Entry<TimeMask, Long> entry : timeCounts.get(level).entrySet()) {
+      TimeMask mask = entry.getKey();
+      if (occupied.intersects(mask)) {
+        continue;
+      }
+      occupied.or(mask);
+      long remaining = countFrom(levels, level + 1, occupied, relevant, timeCounts, memo);
+      count = add(count, multiply(entry.getValue(), remaining));
+      occupied.andNot(mask);
+    }
+
+    if (!timedOut && memoEntries < MAX_MEMO_ENTRIES) {
+      memo.get(level).put(key, count);
+      memoEntries++;
+    }
+    return count;
+  }
+
+  /**
+   * Estimates the number of schedules for a group of courses. Every sample follows a random path
+   * through the search and multiplies the number of choices it had at each level, which on
+   * average equals the number of schedules.
+   * @return the estimate and its 95% margin of error.
+   */
+  private double[] estimate(int[] group) {
+    double sum = 0;
+    double sumOfSquares = 0;
+    ArrayList<Section> candidates = new ArrayList<Section>();
+    TimeMask occupied = new TimeMask();
+    for (int sample = 0; sample < ESTIMATE_SAMPLES; sample++) {
+      double weight = 1;
+      occupied.andNot(occupied);
+      for (int course : group) {
+        candidates.clear();
+        for (Section section : sections.get(course)) {
+          if (!occupied.intersects(section.getTimeMask())) {
+            candidates.add(section);
+          }
+        }
+        if (candidates.isEmpty()) {
+          weight = 0;
+          break;
+        }
+        weight *= candidates.size();
+        occupied.or(candidates.get(random.nextInt(candidates.size())).getTimeMask());
+      }
+      sum += weight;
+      sumOfSquares += weight * weight;
+    }
+
+    double mean = sum / ESTIMATE_SAMPLES;
+    double variance =
+        Math.max(0, (sumOfSquares - ESTIMATE_SAMPLES * mean * mean) / (ESTIMATE_SAMPLES - 1));
+    return new double[] {mean, Z_95 * Math.sqrt(variance / ESTIMATE_SAMPLES)};
+  }
+
+  private static long add(long first, long second) {
+    long sum = first + second;
+    return sum < 0 ? Long.MAX_VALUE : sum;
+  }
+
+  private static long multiply(long first, long second) {
+    try {
+      return Math.multiplyExact(first, second);
+    } catch (ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+}
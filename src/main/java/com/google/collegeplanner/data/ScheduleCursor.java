@@ -0,0 +1,218 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Converts a position in the schedule search to an opaque token and back. The token holds the
+ * path of the last schedule that was returned, or the stack of a search that stopped at its
+ * limit, together with a fingerprint of the sections and search settings so that it can't be
+ * used with a different set of courses.
+ */
+class ScheduleCursor {
+  private static final String VERSION = "v2";
+  // Cursors of truncated searches hold the position from ScheduleSearch.getPosition instead of
+  // the path of a schedule, so that the next request doesn't search the same branches again.
+  private static final String POSITION_VERSION = "p1";
+  // Cursors of SatScheduler hold a position in its list of models instead of a path.
+  private static final String SOLVER_VERSION = "s1";
+
+  private ScheduleCursor() {}
+
+  /**
+   * Returns the token for the position right after the given path.
+   * @param matrix The table the path indexes into.
+   * @param mostConstrainedFirst Whether the search that produced the path used that ordering.
+   * @param path The sections picked at each level of the search.
+   */
+  static String encode(CompatibilityMatrix matrix, boolean mostConstrainedFirst, int[] path) {
+    return encode(VERSION, matrix, mostConstrainedFirst, path);
+  }
+
+  /**
+   * Returns the path stored in the given token.
+   * @throws IllegalArgumentException if the token is malformed or belongs to a different search.
+   */
+  static int[] decode(CompatibilityMatrix matrix, boolean mostConstrainedFirst, String cursor)
+      throws IllegalArgumentException {
+    int[] path = decode(VERSION, matrix, mostConstrainedFirst, cursor);
+    if (path.length != matrix.getCourseCount()) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    for (int section : path) {
+      if (section == matrix.getSectionCount()) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Returns the token for a search that stopped at the given position.
+   * @param matrix The table the position indexes into.
+   * @param mostConstrainedFirst Whether the search used that ordering.
+   * @param position The position from ScheduleSearch.getPosition.
+   */
+  static String encodePosition(CompatibilityMatrix matrix, boolean mostConstrainedFirst,
+      int[] position) {
+    return encode(POSITION_VERSION, matrix, mostConstrainedFirst, position);
+  }
+
+  /**
+   * Returns the search position stored in the given token.
+   * @throws IllegalArgumentException if the token is malformed or belongs to a different search.
+   */
+  static int[] decodePosition(CompatibilityMatrix matrix, boolean mostConstrainedFirst,
+      String cursor) throws IllegalArgumentException {
+    int[] position = decode(POSITION_VERSION, matrix, mostConstrainedFirst, cursor);
+    if (position.length > matrix.getCourseCount()) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    return position;
+  }
+
+  /**
+   * Returns true if the given token holds a search position rather than the path of a schedule.
+   * @throws IllegalArgumentException if the token is not valid Base64.
+   */
+  static boolean isPosition(String cursor) throws IllegalArgumentException {
+    String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    return decoded.startsWith(POSITION_VERSION + ":");
+  }
+
+  /**
+   * Checks that the given token has the form of one this class creates, without checking which
+   * sections it belongs to.
+   * @param model Whether the token has to come from SatScheduler rather than the search.
+   * @throws IllegalArgumentException if the token is malformed.
+   */
+  static void checkFormat(String cursor, boolean model) throws IllegalArgumentException {
+    String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    String[] parts = decoded.split(":", -1);
+    boolean known = model ? parts[0].equals(SOLVER_VERSION)
+        : parts[0].equals(VERSION) || parts[0].equals(POSITION_VERSION);
+    if (parts.length != 3 || !known) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    String[] indices = parts[2].split("\\.", -1);
+    if (model && indices.length != 2) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    for (String index : indices) {
+      try {
+        if (Long.parseLong(index) < 0) {
+          throw new IllegalArgumentException("Malformed cursor.");
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+    }
+  }
+
+  private static String encode(String version, CompatibilityMatrix matrix,
+      boolean mostConstrainedFirst, int[] indices) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(version).append(':').append(getKey(matrix, mostConstrainedFirst)).append(':');
+    for (int i = 0; i < indices.length; i++) {
+      if (i > 0) {
+        builder.append('.');
+      }
+      builder.append(indices[i]);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(
+        builder.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the section indices stored in a token of the given version. The last index of a
+   * position may be one past the last section, so that is allowed for every index here.
+   */
+  private static int[] decode(String version, CompatibilityMatrix matrix,
+      boolean mostConstrainedFirst, String cursor) throws IllegalArgumentException {
+    String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    String[] parts = decoded.split(":", -1);
+    if (parts.length != 3 || !parts[0].equals(version)) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    if (!parts[1].equals(getKey(matrix, mostConstrainedFirst))) {
+      throw new IllegalArgumentException("Cursor belongs to a different set of courses.");
+    }
+
+    String[] indices = parts[2].split("\\.");
+    int[] result = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      try {
+        result[i] = Integer.parseInt(indices[i]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+      if (result[i] < 0 || result[i] > matrix.getSectionCount()) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the token for the position of SatScheduler before the given schedule.
+   * @param matrix The table the solver's models index into.
+   * @param model The number of models found before the one the schedule belongs to.
+   * @param offset The number of schedules of that model that come before it.
+   */
+  static String encodeModel(CompatibilityMatrix matrix, long model, long offset) {
+    String token = SOLVER_VERSION + ":" + matrix.getFingerprint() + ":" + model + "." + offset;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(
+        token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the model and offset stored in the given SatScheduler token.
+   * @throws IllegalArgumentException if the token is malformed or belongs to a different search.
+   */
+  static long[] decodeModel(CompatibilityMatrix matrix, String cursor)
+      throws IllegalArgumentException {
+    String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    String[] parts = decoded.split(":", -1);
+    if (parts.length != 3 || !parts[0].equals(SOLVER_VERSION)) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    if (!parts[1].equals(matrix.getFingerprint())) {
+      throw new IllegalArgumentException("Cursor belongs to a different set of courses.");
+    }
+
+    String[] position = parts[2].split("\\.", -1);
+    if (position.length != 2) {
+      throw new IllegalArgumentException("Malformed cursor.");
+    }
+    long[] result = new long[2];
+    for (int i = 0; i < 2; i++) {
+      try {
+        result[i] = Long.parseLong(position[i]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+      if (result[i] < 0) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+    }
+    return result;
+  }
+
+  private static String getKey(CompatibilityMatrix matrix, boolean mostConstrainedFirst) {
+    return matrix.getFingerprint() + (mostConstrainedFirst ? "m" : "o");
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.ArrayList;
+
+/**
+ * A way of finding a page of conflict-free schedules for a list of courses. SemesterScheduler
+ * and ParallelSemesterScheduler search by backtracking, SatScheduler with a SAT solver.
+ */
+public interface ScheduleEngine {
+  /**
+   * Makes the search stop once the given limit is reached. The schedules found until then are
+   * still returned, and isTruncated tells whether that happened.
+   */
+  void setSearchLimit(SearchLimit limit);
+
+  /**
+   * Returns the first page of schedules.
+   */
+  ArrayList<Schedule> getPossibleSchedules();
+
+  /**
+   * Returns a cursor for the page after the one getPossibleSchedules returned, or null if there
+   * are no more schedules.
+   */
+  String getNextCursor();
+
+  /**
+   * Returns true if the last search stopped at the search limit before it was done.
+   */
+  boolean isTruncated();
+}
@@ -0,0 +1,138 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class walks through the possible schedules one at a time. The search only runs as far as
+ * needed to produce the next schedule, and its position can be saved as a cursor so that a later
+ * request can continue exactly where this one stopped.
+ */
+public class ScheduleIterator implements Iterator<Schedule> {
+  private final CompatibilityMatrix matrix;
+  private final boolean mostConstrainedFirst;
+  private final ScheduleSearch search;
+  private final PathExpander expander;
+  // Whether the expander holds the path the search is on.
+  private boolean expanding;
+  // The path of the schedule that was returned last, or the path the iterator started after.
+  private int[] lastPath;
+  // The cursor the iterator was started from, or null.
+  private final String startCursor;
+  // Whether the search has already been moved on to the schedule that next() returns.
+  private boolean lookedAhead;
+  private boolean hasNext;
+
+  /**
+   * @param matrix The sections to build schedules from.
+   * @param mostConstrainedFirst Whether the search goes through the most constrained courses
+   *     first.
+   * @param cursor A cursor from a previous iterator over the same sections, or null to start
+   *     from the first schedule.
+   * @param limit Bounds the work the iterator does in total, or null for no bound.
+   * @throws IllegalArgumentException if the cursor is invalid for these sections.
+   */
+  ScheduleIterator(CompatibilityMatrix matrix, boolean mostConstrainedFirst, String cursor,
+      SearchLimit limit) throws IllegalArgumentException {
+    this.matrix = matrix;
+    this.mostConstrainedFirst = mostConstrainedFirst;
+    search = new ScheduleSearch(matrix, mostConstrainedFirst);
+    if (limit != null) {
+      search.setStopCondition(limit.newCheck());
+    }
+    search.start(new int[0], matrix.getCourseCount());
+    expander = new PathExpander(matrix);
+    startCursor = cursor;
+    if (cursor != null && ScheduleCursor.isPosition(cursor)) {
+      // A truncated search left off between schedules, so there is nothing left to expand.
+      search.seekPosition(ScheduleCursor.decodePosition(matrix, mostConstrainedFirst, cursor));
+    } else if (cursor != null) {
+      lastPath = ScheduleCursor.decode(matrix, mostConstrainedFirst, cursor);
+      int[] representatives = new int[lastPath.length];
+      for (int i = 0; i < lastPath.length; i++) {
+        representatives[i] = matrix.getRepresentative(lastPath[i]);
+      }
+      search.seek(representatives);
+      expander.reset(representatives);
+      expander.seek(lastPath);
+      expanding = true;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!lookedAhead) {
+      // Every combination of the current representatives comes before the search moves on.
+      hasNext = expanding && expander.advance();
+      if (!hasNext) {
+        hasNext = search.next();
+        expanding = hasNext;
+        if (hasNext) {
+          expander.reset(search.getPath());
+        }
+      }
+      lookedAhead = true;
+    }
+    return hasNext;
+  }
+
+  @Override
+  public Schedule next() {
+    return nextIndexed().toSchedule();
+  }
+
+  /**
+   * Returns the next schedule as section indices, which is cheaper than next() when the Section
+   * objects are only needed for serialization.
+   */
+  public IndexedSchedule nextIndexed() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    lookedAhead = false;
+    lastPath = expander.getPath().clone();
+    return IndexedSchedule.of(matrix, lastPath);
+  }
+
+  /**
+   * Returns true if hasNext returned false because the search limit was reached rather than
+   * because there are no more schedules.
+   */
+  public boolean isTruncated() {
+    return search.wasStopped();
+  }
+
+  /**
+   * Returns a cursor for the position right after the schedule that was returned last. If the
+   * search was truncated, the cursor instead holds the point where the search stopped, so that
+   * the branches it already went through aren't searched again, even if it found nothing.
+   * Otherwise returns the cursor the iterator was started from if it hasn't returned anything,
+   * or null if there is none.
+   */
+  public String getCursor() {
+    if (search.wasStopped()) {
+      int[] position = search.getPosition();
+      if (position != null) {
+        return ScheduleCursor.encodePosition(matrix, mostConstrainedFirst, position);
+      }
+    }
+    if (lastPath == null) {
+      return startCursor;
+    }
+    return ScheduleCursor.encode(matrix, mostConstrainedFirst, lastPath);
+  }
+}
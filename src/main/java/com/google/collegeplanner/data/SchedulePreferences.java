@@ -0,0 +1,192 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.time.DayOfWeek;
+import org.json.simple.JSONObject;
+
+/*
+ * This class holds how much a student cares about each property of a schedule. Every property
+ * adds a penalty to the cost of a schedule, and schedules with a lower cost are preferred.
+ * All weights have to be non-negative.
+ */
+public class SchedulePreferences {
+  static final DayOfWeek[] WEEKDAYS = {DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY,
+      DayOfWeek.THURSDAY, DayOfWeek.FRIDAY};
+
+  /*
+   * earliestStart is the earliest time, in minutes after midnight, that the student wants to
+   * be in class. Every minute a day starts before it costs startWeight.
+   */
+  private int earliestStart = 10 * 60;
+  private double startWeight = 1;
+  /*
+   * latestEnd is the latest time, in minutes after midnight, that the student wants to be in
+   * class. Every minute a day ends after it costs endWeight.
+   */
+  private int latestEnd = 17 * 60;
+  private double endWeight = 1;
+  /*
+   * daysWeight is the cost of every day that has at least one class.
+   */
+  private double daysWeight = 60;
+  /*
+   * gapWeight is the cost of every minute between two classes on the same day.
+   */
+  private double gapWeight = 0.5;
+  /*
+   * seatWeight is the cost of a completely full section. Sections with open seats cost
+   * proportionally less.
+   */
+  private double seatWeight = 30;
+
+  public SchedulePreferences() {}
+
+  /**
+   * Reads the preferences from json. Missing values keep their defaults.
+   * @param json The preferences sent by the client.
+   */
+  public SchedulePreferences(JSONObject json) throws ParseException {
+    earliestStart = (int) getNumber(json, "earliest_start", earliestStart);
+    latestEnd = (int) getNumber(json, "latest_end", latestEnd);
+    startWeight = getNumber(json, "start_weight", startWeight);
+    endWeight = getNumber(json, "end_weight", endWeight);
+    daysWeight = getNumber(json, "days_weight", daysWeight);
+    gapWeight = getNumber(json, "gap_weight", gapWeight);
+    seatWeight = getNumber(json, "seat_weight", seatWeight);
+
+    validate();
+  }
+
+  /*
+   * Validates the weights. Negative weights would make the search skip schedules that could
+   * still be among the best.
+   */
+  private void validate() throws ParseException {
+    if (startWeight < 0 || endWeight < 0 || daysWeight < 0 || gapWeight < 0 || seatWeight < 0) {
+      throw new ParseException("Negative preference weight.", 0);
+    }
+  }
+
+  private static double getNumber(JSONObject json, String key, double defaultValue)
+      throws ParseException {
+    Object value = json.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (!(value instanceof Number)) {
+      throw new ParseException("Invalid value for " + key + ".", 0);
+    }
+    return ((Number) value).doubleValue();
+  }
+
+  /**
+   * Returns the cost of a schedule. Lower is better.
+   */
+  public double getCost(Schedule schedule) {
+    double cost = getTimeCost(schedule.getTimeMask(), new int[WEEKDAYS.length]);
+    for (Section section : schedule.getSections()) {
+      cost += getSeatCost(section);
+    }
+    return cost;
+  }
+
+  /**
+   * Returns the start, end, days and gap penalties for the given occupied time.
+   * @param mask The time occupied by the schedule.
+   * @param fillableSlots The number of slots on each weekday that sections not in the mask yet
+   *     could still fill. Gaps are reduced by that amount.
+   */
+  double getTimeCost(TimeMask mask, int[] fillableSlots) {
+    double cost = 0;
+    for (int day = 0; day < WEEKDAYS.length; day++) {
+      int firstSlot = mask.getFirstSlot(WEEKDAYS[day]);
+      if (firstSlot < 0) {
+        continue;
+      }
+      int endSlot = mask.getEndSlot(WEEKDAYS[day]);
+      int gapSlots = endSlot - firstSlot - mask.countSlots(WEEKDAYS[day]) - fillableSlots[day];
+
+      int start = firstSlot * TimeMask.SLOT_MINUTES;
+      int end = endSlot * TimeMask.SLOT_MINUTES;
+      cost += daysWeight;
+      cost += startWeight * Math.max(0, earliestStart - start);
+      cost += endWeight * Math.max(0, end - latestEnd);
+      cost += gapWeight * Math.max(0, gapSlots) * TimeMask.SLOT_MINUTES;
+    }
+    return cost;
+  }
+
+  /**
+   * Returns the seat penalty of a section. A section with every seat open costs nothing and a
+   * full section costs seatWeight. Sections without a known number of seats count as full. A
+   * bundle of corequisite sections costs as much as its parts together.
+   */
+  double getSeatCost(Section section) {
+    Section[] parts = section.getParts();
+    if (parts.length > 1) {
+      double cost = 0;
+      for (Section part : parts) {
+        cost += getSeatCost(part);
+      }
+      return cost;
+    }
+    if (section.getSeats() <= 0) {
+      return seatWeight;
+    }
+    double open = Math.max(0, Math.min(section.getOpenSeats(), section.getSeats()));
+    return seatWeight * (1 - open / section.getSeats());
+  }
+
+  // Getter Methods
+
+  public int getEarliestStart() {
+    return earliestStart;
+  }
+
+  public double getStartWeight() {
+    return startWeight;
+  }
+
+  public int getLatestEnd() {
+    return latestEnd;
+  }
+
+  public double getEndWeight() {
+    return endWeight;
+  }
+
+  public double getDaysWeight() {
+    return daysWeight;
+  }
+
+  public double getGapWeight() {
+    return gapWeight;
+  }
+
+  public double getSeatWeight() {
+    return seatWeight;
+  }
+
+  /**
+   * Returns every setting, so equal strings mean equal preferences.
+   */
+  @Override
+  public String toString() {
+    return earliestStart + "," + startWeight + "," + latestEnd + "," + endWeight + ","
+        + daysWeight + "," + gapWeight + "," + seatWeight;
+  }
+}
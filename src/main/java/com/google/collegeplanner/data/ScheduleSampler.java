@@ -0,0 +1,156 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class finds schedules from random starting points. Every sample is a depth first search
+ * that tries the candidates of each course in a random order and stops at the first schedule it
+ * finds, so different samples tend to land in different parts of the search space instead of
+ * next to each other like consecutive results of the ordered search do.
+ *
+ * The search branches on representatives and uses the same forward checking as ScheduleSearch.
+ */
+class ScheduleSampler {
+  private final CompatibilityMatrix matrix;
+  private final Random random;
+  private final BooleanSupplier stopCondition;
+  // path[i] is the representative picked for course i.
+  private final int[] path;
+  private final boolean[] assigned;
+  private final BitSet[] allowedAtLevel;
+  private boolean stopped;
+
+  ScheduleSampler(CompatibilityMatrix matrix, Random random, BooleanSupplier stopCondition) {
+    this.matrix = matrix;
+    this.random = random;
+    this.stopCondition = stopCondition;
+    path = new int[matrix.getCourseCount()];
+    assigned = new boolean[matrix.getCourseCount()];
+    allowedAtLevel = new BitSet[matrix.getCourseCount() + 1];
+    for (int i = 0; i < allowedAtLevel.length; i++) {
+      allowedAtLevel[i] = new BitSet(matrix.getSectionCount());
+    }
+  }
+
+  /**
+   * Returns true if the last sample ended because of the stop condition.
+   */
+  boolean wasStopped() {
+    return stopped;
+  }
+
+  /**
+   * Returns the representatives of a random schedule, one for each course in course order, or
+   * null if there is none or the stop condition was met first. The array is reused, so it has to
+   * be copied if it is kept.
+   */
+  int[] sample() {
+    stopped = false;
+    for (int i = 0; i < assigned.length; i++) {
+      assigned[i] = false;
+    }
+    allowedAtLevel[0].clear();
+    allowedAtLevel[0].or(matrix.getRepresentatives());
+    if (hasEmptyDomain(allowedAtLevel[0])) {
+      return null;
+    }
+    return search(0) ? path : null;
+  }
+
+  /**
+   * Picks a section for one more course. Returns true once every course has a section.
+   */
+  private boolean search(int level) {
+    if (level == path.length) {
+      return true;
+    }
+    if (stopCondition.getAsBoolean()) {
+      stopped = true;
+      return false;
+    }
+
+    BitSet allowed = allowedAtLevel[level];
+    BitSet next = allowedAtLevel[level + 1];
+    int course = pickCourse(allowed);
+    int[] candidates = getCandidates(allowed, course);
+    assigned[course] = true;
+    // Trying the candidates in a random order is what makes the samples differ.
+    for (int i = candidates.length - 1; i >= 0; i--) {
+      int pick = random.nextInt(i + 1);
+      int section = candidates[pick];
+      candidates[pick] = candidates[i];
+
+      next.clear();
+      next.or(allowed);
+      next.and(matrix.getCompatible(section));
+      if (hasEmptyDomain(next)) {
+        continue;
+      }
+      path[course] = section;
+      if (search(level + 1)) {
+        return true;
+      }
+      if (stopped) {
+        break;
+      }
+    }
+    assigned[course] = false;
+    return false;
+  }
+
+  /**
+   * Returns the course without a section that has the fewest candidates left.
+   */
+  private int pickCourse(BitSet allowed) {
+    int bestCourse = -1;
+    int bestSize = Integer.MAX_VALUE;
+    for (int course = 0; course < assigned.length; course++) {
+      if (assigned[course]) {
+        continue;
+      }
+      int size = getCandidates(allowed, course).length;
+      if (size < bestSize) {
+        bestCourse = course;
+        bestSize = size;
+      }
+    }
+    return bestCourse;
+  }
+
+  private int[] getCandidates(BitSet allowed, int course) {
+    return allowed.get(matrix.getCourseStart(course), matrix.getCourseEnd(course)).stream()
+        .map(index -> index + matrix.getCourseStart(course)).toArray();
+  }
+
+  /**
+   * Returns true if some course without a picked section has no allowed sections left.
+   */
+  private boolean hasEmptyDomain(BitSet allowed) {
+    for (int course = 0; course < assigned.length; course++) {
+      if (assigned[course]) {
+        continue;
+      }
+      int first = allowed.nextSetBit(matrix.getCourseStart(course));
+      if (first < 0 || first >= matrix.getCourseEnd(course)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,170 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * This class keeps the k schedules with the lowest cost under a set of SchedulePreferences, and
+ * cuts off branches of the search that can't beat the k-th best schedule found so far.
+ *
+ * The bound for a partial schedule never overestimates the cost of any schedule that contains
+ * it: the start, end and days penalties can only grow as sections are added, gaps can shrink by
+ * at most the time the remaining courses could fill, and each remaining course costs at least
+ * its cheapest allowed section in seat penalty.
+ */
+class ScheduleScorer implements ScheduleSearch.BranchFilter {
+  private static final DayOfWeek[] WEEKDAYS = SchedulePreferences.WEEKDAYS;
+  // Orders schedules from the lowest cost to the highest. Ties go to the one found first.
+  private static final Comparator<ScoredPath> BY_COST =
+      Comparator.comparingDouble((ScoredPath scored) -> scored.cost)
+          .thenComparingInt(scored -> scored.order);
+
+  private final CompatibilityMatrix matrix;
+  private final SchedulePreferences preferences;
+  private final int k;
+  // The seat penalty of every section in the matrix.
+  private final double[] seatCosts;
+  // capacity[course][day] is the most slots any section of the course occupies on that day.
+  private final int[][] capacity;
+  // maskAtLevel[i] and seatCostAtLevel[i] describe the sections picked in the first i levels.
+  private final TimeMask[] maskAtLevel;
+  private final double[] seatCostAtLevel;
+  private final boolean[] assigned;
+  private final int[] fillableSlots;
+  // The k best schedules found so far, with the worst one at the head.
+  private final PriorityQueue<ScoredPath> best;
+  // The bound of the last accepted branch. For a full schedule it is the exact cost.
+  private double lastCost;
+  private int found;
+
+  ScheduleScorer(CompatibilityMatrix matrix, SchedulePreferences preferences, int k) {
+    this.matrix = matrix;
+    this.preferences = preferences;
+    this.k = k;
+
+    seatCosts = new double[matrix.getSectionCount()];
+    capacity = new int[matrix.getCourseCount()][WEEKDAYS.length];
+    for (int i = 0; i < seatCosts.length; i++) {
+      Section section = matrix.getSection(i);
+      seatCosts[i] = preferences.getSeatCost(section);
+      int[] courseCapacity = capacity[matrix.getCourse(i)];
+      for (int day = 0; day < WEEKDAYS.length; day++) {
+        courseCapacity[day] =
+            Math.max(courseCapacity[day], section.getTimeMask().countSlots(WEEKDAYS[day]));
+      }
+    }
+
+    maskAtLevel = new TimeMask[matrix.getCourseCount() + 1];
+    for (int i = 0; i < maskAtLevel.length; i++) {
+      maskAtLevel[i] = new TimeMask();
+    }
+    seatCostAtLevel = new double[matrix.getCourseCount() + 1];
+    assigned = new boolean[matrix.getCourseCount()];
+    fillableSlots = new int[WEEKDAYS.length];
+    best = new PriorityQueue<ScoredPath>(BY_COST.reversed());
+  }
+
+  @Override
+  public boolean accept(int level, int[] path, BitSet allowed) {
+    int section = path[level];
+    TimeMask mask = maskAtLevel[level + 1];
+    mask.copyFrom(maskAtLevel[level]);
+    mask.or(matrix.getSection(section).getTimeMask());
+    seatCostAtLevel[level + 1] = seatCostAtLevel[level] + seatCosts[section];
+
+    for (int course = 0; course < assigned.length; course++) {
+      assigned[course] = false;
+    }
+    for (int i = 0; i <= level; i++) {
+      assigned[matrix.getCourse(path[i])] = true;
+    }
+    for (int day = 0; day < WEEKDAYS.length; day++) {
+      fillableSlots[day] = 0;
+      for (int course = 0; course < assigned.length; course++) {
+        if (!assigned[course]) {
+          fillableSlots[day] += capacity[course][day];
+        }
+      }
+    }
+
+    lastCost = seatCostAtLevel[level + 1] + preferences.getTimeCost(mask, fillableSlots)
+        + getRemainingSeatCost(allowed);
+    return best.size() < k || lastCost < best.peek().cost;
+  }
+
+  /**
+   * Records the full schedule that the search just returned.
+   * @param path the sections picked at each level.
+   */
+  void record(int[] path) {
+    best.add(new ScoredPath(path.clone(), lastCost, found++));
+    if (best.size() > k) {
+      best.poll();
+    }
+  }
+
+  /**
+   * Returns the paths of the best schedules, from the lowest cost to the highest.
+   */
+  ArrayList<int[]> getBestPaths() {
+    ArrayList<ScoredPath> sorted = new ArrayList<ScoredPath>(best);
+    sorted.sort(BY_COST);
+    ArrayList<int[]> paths = new ArrayList<int[]>();
+    for (ScoredPath scored : sorted) {
+      paths.add(scored.path);
+    }
+    return paths;
+  }
+
+  /**
+   * Returns the smallest seat penalty that the courses without a picked section can add.
+   */
+  private double getRemainingSeatCost(BitSet allowed) {
+    double cost = 0;
+    for (int course = 0; course < assigned.length; course++) {
+      if (assigned[course]) {
+        continue;
+      }
+      double cheapest = Double.MAX_VALUE;
+      int end = matrix.getCourseEnd(course);
+      for (int i = allowed.nextSetBit(matrix.getCourseStart(course)); i >= 0 && i < end;
+           i = allowed.nextSetBit(i + 1)) {
+        cheapest = Math.min(cheapest, seatCosts[i]);
+      }
+      cost += cheapest == Double.MAX_VALUE ? 0 : cheapest;
+    }
+    return cost;
+  }
+
+  /**
+   * A full schedule together with its cost and the order it was found in, which breaks ties.
+   */
+  private static class ScoredPath {
+    final int[] path;
+    final double cost;
+    final int order;
+
+    ScoredPath(int[] path, double cost, int order) {
+      this.path = path;
+      this.cost = cost;
+      this.order = order;
+    }
+  }
+}
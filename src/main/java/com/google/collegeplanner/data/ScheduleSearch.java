@@ -0,0 +1,367 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * This class runs the depth first search over a CompatibilityMatrix that the schedulers share.
+ * Every level of the search picks one section for one course. The search keeps its own stack
+ * instead of recursing, so it can stop after any result and continue later from the same point.
+ * A search owns its own working state, so separate searches over the same matrix can run on
+ * different threads.
+ *
+ * By default the search only branches on the representatives of groups of interchangeable
+ * sections, so every path it visits stands for all combinations of the members of those groups.
+ * PathExpander lists them.
+ */
+class ScheduleSearch {
+  /**
+   * Decides whether the search should go deeper after a section was picked. It is called after
+   * forward checking succeeded, with the levels before the given one unchanged since the last
+   * call for that level, so implementations can keep their own state per level.
+   */
+  interface BranchFilter {
+    /**
+     * Returns false to skip every schedule that contains the sections picked so far.
+     * @param level the level the section was picked at.
+     * @param path the sections picked at each level up to and including level.
+     * @param allowed the sections still compatible with every section in the path.
+     */
+    boolean accept(int level, int[] path, BitSet allowed);
+  }
+
+  private final CompatibilityMatrix matrix;
+  // If true, the search picks the course with the fewest remaining sections at every level
+  // instead of going through the courses in the order they were given.
+  private final boolean mostConstrainedFirst;
+  // path[i] is the index in matrix of the section picked at level i of the search.
+  private final int[] path;
+  // assigned[i] is true if a section is currently picked for course i.
+  private final boolean[] assigned;
+  // allowedAtLevel[i] holds the sections that are still compatible with everything picked in
+  // the first i levels. They are allocated once so the search doesn't create new bitsets.
+  private final BitSet[] allowedAtLevel;
+  // courseAtLevel[i] is the course that level i of the search picks a section for.
+  private final int[] courseAtLevel;
+  // The candidates of level i that haven't been tried yet are the allowed sections in
+  // [resumeFrom[i], levelEnd[i]).
+  private final int[] resumeFrom;
+  private final int[] levelEnd;
+  // Checked at every step of the search. The search stops as soon as it returns true.
+  private BooleanSupplier stopCondition = () -> false;
+  private BranchFilter branchFilter = (level, path, allowed) -> true;
+  private boolean representativesOnly = true;
+
+  private int[] prefix;
+  private int depth;
+  // The number of levels that currently have a section picked.
+  private int level;
+  private boolean exhausted;
+  private boolean stopped;
+
+  ScheduleSearch(CompatibilityMatrix matrix, boolean mostConstrainedFirst) {
+    this.matrix = matrix;
+    this.mostConstrainedFirst = mostConstrainedFirst;
+    int courseCount = matrix.getCourseCount();
+    path = new int[courseCount];
+    assigned = new boolean[courseCount];
+    courseAtLevel = new int[courseCount];
+    resumeFrom = new int[courseCount];
+    levelEnd = new int[courseCount];
+    allowedAtLevel = new BitSet[courseCount + 1];
+    for (int i = 0; i < allowedAtLevel.length; i++) {
+      allowedAtLevel[i] = new BitSet(matrix.getSectionCount());
+    }
+  }
+
+  void setStopCondition(BooleanSupplier stopCondition) {
+    this.stopCondition = stopCondition;
+  }
+
+  /**
+   * Sets a filter that can cut off branches of the search. The filter is not consulted by seek.
+   */
+  void setBranchFilter(BranchFilter branchFilter) {
+    this.branchFilter = branchFilter;
+  }
+
+  /**
+   * Makes the search branch on every section instead of only on representatives. Filters that
+   * tell sections with the same meeting times apart need this.
+   */
+  void setRepresentativesOnly(boolean representativesOnly) {
+    this.representativesOnly = representativesOnly;
+  }
+
+  /**
+   * Returns true if the search ended early because of the stop condition or a visitor.
+   */
+  boolean wasStopped() {
+    return stopped;
+  }
+
+  /**
+   * Returns the sections picked at each level for the partial schedule the search is on. The
+   * array is reused by the search, so it has to be copied if it is kept.
+   */
+  int[] getPath() {
+    return path;
+  }
+
+  /**
+   * Visits every partial schedule with depth sections that starts with the given prefix, in the
+   * order the search finds them.
+   * @param prefix the sections that the first levels of the search are restricted to.
+   * @param depth the number of levels to search before visiting.
+   * @param visitor receives the sections picked at each level. The array is reused between
+   *     calls, so it has to be copied if it is kept. Returns false to stop the search.
+   */
+  void run(int[] prefix, int depth, Predicate<int[]> visitor) {
+    start(prefix, depth);
+    while (next()) {
+      if (!visitor.test(path)) {
+        stopped = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Resets the search so that next() walks through every partial schedule with depth sections
+   * that starts with the given prefix. Passing the number of courses as depth walks through full
+   * schedules.
+   * @param prefix the sections that the first levels of the search are restricted to. It has to
+   *     be a path that an identically configured search visited before.
+   * @param depth the number of levels to search before stopping at a result.
+   */
+  void start(int[] prefix, int depth) {
+    this.prefix = prefix;
+    this.depth = depth;
+    level = 0;
+    stopped = false;
+    exhausted = false;
+    Arrays.fill(assigned, false);
+    allowedAtLevel[0].clear();
+    allowedAtLevel[0].or(
+        representativesOnly ? matrix.getRepresentatives() : matrix.allSections());
+    if (depth == 0 || hasEmptyDomain(allowedAtLevel[0])) {
+      exhausted = true;
+      return;
+    }
+    enterLevel(0);
+  }
+
+  /**
+   * Moves the search to the given path, as if next() had just returned it. The search has to
+   * have been started without a prefix.
+   * @param target the sections picked at each level.
+   * @throws IllegalArgumentException if the search would never visit the given path.
+   */
+  void seek(int[] target) throws IllegalArgumentException {
+    if (exhausted || target.length != depth) {
+      throw new IllegalArgumentException("Path is not part of the search.");
+    }
+    descend(target, depth);
+  }
+
+  /**
+   * Returns where the search stands, so that seekPosition can continue a new search from there
+   * even if the search stopped in a branch without results. The first elements are the sections
+   * picked at the levels above the one the search is on, and the last element is the next
+   * candidate to try at that level. Returns null if the search is done.
+   */
+  int[] getPosition() {
+    if (exhausted || prefix == null) {
+      return null;
+    }
+    // After returning a result, the search continues from the level of its last section.
+    int current = Math.min(level, depth - 1);
+    int[] position = Arrays.copyOf(path, current + 1);
+    position[current] = resumeFrom[current];
+    return position;
+  }
+
+  /**
+   * Moves the search to a position that getPosition returned for an identically configured
+   * search. The search has to have been started without a prefix. The position may come from a
+   * search that was restricted to a prefix, since its stack is the same as the one of the
+   * unrestricted search, except that the prefix levels are never revisited.
+   * @throws IllegalArgumentException if the search would never reach the given position.
+   */
+  void seekPosition(int[] position) throws IllegalArgumentException {
+    int current = position.length - 1;
+    if (exhausted || current < 0 || current >= depth) {
+      throw new IllegalArgumentException("Position is not part of the search.");
+    }
+    descend(position, current);
+    int candidate = position[current];
+    if (candidate < resumeFrom[current] || candidate > levelEnd[current]) {
+      throw new IllegalArgumentException("Position is not part of the search.");
+    }
+    resumeFrom[current] = candidate;
+  }
+
+  /**
+   * Picks the given sections at the first count levels of a freshly started search.
+   * @throws IllegalArgumentException if the search would never pick them.
+   */
+  private void descend(int[] target, int count) throws IllegalArgumentException {
+    for (int i = 0; i < count; i++) {
+      int section = target[i];
+      BitSet next = allowedAtLevel[i + 1];
+      if (section < resumeFrom[i] || section >= levelEnd[i] || !allowedAtLevel[i].get(section)) {
+        throw new IllegalArgumentException("Path is not part of the search.");
+      }
+      next.clear();
+      next.or(allowedAtLevel[i]);
+      next.and(matrix.getCompatible(section));
+      if (hasEmptyDomain(next)) {
+        throw new IllegalArgumentException("Path is not part of the search.");
+      }
+      path[i] = section;
+      resumeFrom[i] = section + 1;
+      level = i + 1;
+      if (level < depth) {
+        enterLevel(level);
+      }
+    }
+  }
+
+  /**
+   * Moves the search on to the next partial schedule. Returns false once there are none left or
+   * the stop condition was met.
+   */
+  boolean next() {
+    if (exhausted || stopped) {
+      return false;
+    }
+    if (level == depth) {
+      // Step back from the result that was returned last.
+      level--;
+    }
+
+    while (true) {
+      if (stopCondition.getAsBoolean()) {
+        stopped = true;
+        return false;
+      }
+
+      // After a section is picked, the search only goes deeper if every course without a
+      // section still has at least one candidate left and the branch filter accepts it.
+      BitSet allowed = allowedAtLevel[level];
+      BitSet next = allowedAtLevel[level + 1];
+      int section = allowed.nextSetBit(resumeFrom[level]);
+      while (section >= 0 && section < levelEnd[level]) {
+        next.clear();
+        next.or(allowed);
+        next.and(matrix.getCompatible(section));
+        path[level] = section;
+        if (!hasEmptyDomain(next) && branchFilter.accept(level, path, next)) {
+          break;
+        }
+        section = allowed.nextSetBit(section + 1);
+      }
+
+      if (section >= 0 && section < levelEnd[level]) {
+        resumeFrom[level] = section + 1;
+        level++;
+        if (level == depth) {
+          return true;
+        }
+        enterLevel(level);
+      } else {
+        // Every candidate of this level has been tried, so go back up one level.
+        assigned[courseAtLevel[level]] = false;
+        if (level == 0) {
+          exhausted = true;
+          return false;
+        }
+        level--;
+      }
+    }
+  }
+
+  /**
+   * Picks the course for the given level and sets up the candidates to try for it.
+   */
+  private void enterLevel(int level) {
+    int course = pickCourse(allowedAtLevel[level]);
+    courseAtLevel[level] = course;
+    assigned[course] = true;
+    resumeFrom[level] = matrix.getCourseStart(course);
+    levelEnd[level] = matrix.getCourseEnd(course);
+    if (level < prefix.length) {
+      // Only the section from the prefix is tried at this level.
+      resumeFrom[level] = prefix[level];
+      levelEnd[level] = Math.min(levelEnd[level], prefix[level] + 1);
+    }
+  }
+
+  /**
+   * Returns the course that should be assigned next.
+   * @param allowed the sections that are still available at this level.
+   */
+  private int pickCourse(BitSet allowed) {
+    int bestCourse = -1;
+    int bestSize = Integer.MAX_VALUE;
+    for (int course = 0; course < assigned.length; course++) {
+      if (assigned[course]) {
+        continue;
+      }
+      if (!mostConstrainedFirst) {
+        return course;
+      }
+      int size = countInCourse(allowed, course);
+      if (size < bestSize) {
+        bestCourse = course;
+        bestSize = size;
+      }
+    }
+    return bestCourse;
+  }
+
+  /**
+   * Returns true if some course without a picked section has no allowed sections left.
+   */
+  private boolean hasEmptyDomain(BitSet allowed) {
+    for (int course = 0; course < assigned.length; course++) {
+      if (assigned[course]) {
+        continue;
+      }
+      int first = allowed.nextSetBit(matrix.getCourseStart(course));
+      if (first < 0 || first >= matrix.getCourseEnd(course)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of allowed sections of the given course.
+   */
+  private int countInCourse(BitSet allowed, int course) {
+    int count = 0;
+    int end = matrix.getCourseEnd(course);
+    for (int i = allowed.nextSetBit(matrix.getCourseStart(course)); i >= 0 && i < end;
+         i = allowed.nextSetBit(i + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class bounds how much work a schedule search may do. A search stops once it ran past the
+ * deadline, visited more than the allowed number of nodes, or cancel() was called. Searches that
+ * stop early keep the schedules they found so far and report that they were truncated.
+ *
+ * One limit can be shared by the tasks of a parallel search. Every search gets its own check
+ * from newCheck(), which only updates the shared state every few steps.
+ */
+public class SearchLimit {
+  // Steps are counted locally and only added to the shared count this often, since reading the
+  // clock and updating the counter are much slower than a step of the search.
+  private static final int STEPS_PER_CHECK = 1024;
+
+  private final long deadline;
+  private final boolean hasDeadline;
+  private final long maxSteps;
+  private final AtomicLong steps = new AtomicLong();
+  private volatile boolean reached;
+
+  /**
+   * @param timeoutMillis How long the search may run, starting now.
+   * @param maxSteps How many nodes the search may visit in total.
+   */
+  public SearchLimit(long timeoutMillis, long maxSteps) {
+    hasDeadline = timeoutMillis < Long.MAX_VALUE / 1000000;
+    deadline = hasDeadline ? System.nanoTime() + timeoutMillis * 1000000 : 0;
+    this.maxSteps = maxSteps;
+  }
+
+  /**
+   * Returns a limit that is only reached if it is cancelled.
+   */
+  public static SearchLimit unlimited() {
+    return new SearchLimit(Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Stops every search that uses this limit at its next check.
+   */
+  public void cancel() {
+    reached = true;
+  }
+
+  /**
+   * Returns true if a search stopped or will stop because of this limit.
+   */
+  public boolean isReached() {
+    return reached;
+  }
+
+  /**
+   * Returns a stop condition for a single search. It must only be used by one thread.
+   */
+  BooleanSupplier newCheck() {
+    int[] localSteps = new int[1];
+    return () -> {
+      if (reached) {
+        return true;
+      }
+      if (++localSteps[0] < STEPS_PER_CHECK) {
+        return false;
+      }
+      long total = steps.addAndGet(localSteps[0]);
+      localSteps[0] = 0;
+      if (total > maxSteps || (hasDeadline && System.nanoTime() - deadline > 0)) {
+        reached = true;
+      }
+      return reached;
+    };
+  }
+}
@@ -32,6 +32,8 @@ public class Section {
   @SerializedName("seats") private int seats;
   @SerializedName("instructors") private String[] instructors;
   @SerializedName("meetings") private Meeting[] meetings;
+  // timeMask is the union of the time masks of all of this section's meetings.
+  private transient TimeMask timeMask;
 
   public Section(String sectionId, String courseId, String waitlist, String openSeats, String seats,
       String[] instructors, Meeting[] meetings) throws ParseException {
@@ -44,6 +46,7 @@ public class Section {
     this.meetings = meetings;
 
     validate();
+    buildTimeMask();
   }
 
   public Section(JSONObject json) throws ParseException {
@@ -75,11 +78,13 @@ public class Section {
     for (Object jsonObject : meetingsArray) {
       JSONObject meetingJson = (JSONObject) jsonObject;
       Meeting meeting = new Meeting(meetingJson);
-      meetings.add(meeting);
+      if (!containsDuplicate(meetings, meeting)) {
+        meetings.add(meeting);
+      }
     }
     this.meetings = meetings.toArray(new Meeting[0]);
-    // TODO (naaoli): handle duplicate meetings if time allows for it
     validate();
+    buildTimeMask();
   }
 
   public Section(EmbeddedEntity sectionEntity) throws ParseException {
@@ -108,6 +113,23 @@ public class Section {
     } else {
       this.instructors = instructors.toArray(new String[0]);
     }
+
+    buildTimeMask();
+  }
+
+  /**
+   * Creates a section from already validated fields and its combined time mask.
+   */
+  Section(String sectionId, String courseId, String waitlist, int openSeats, int seats,
+      String[] instructors, Meeting[] meetings, TimeMask timeMask) {
+    this.sectionId = sectionId;
+    this.courseId = courseId;
+    this.waitlist = waitlist;
+    this.openSeats = openSeats;
+    this.seats = seats;
+    this.instructors = instructors;
+    this.meetings = meetings;
+    this.timeMask = timeMask;
   }
 
   /*
@@ -120,19 +142,42 @@ public class Section {
     this.sectionId = this.sectionId.toUpperCase();
   }
 
-  // This method returns true if the two sections conflict with each other and
-  // returns false if they do not conflict.
-  public boolean conflictsWith(Section other) {
-    for (Meeting meeting : meetings) {
-      for (Meeting otherMeeting : other.getMeetings()) {
-        if (meeting.conflictsWith(otherMeeting)) {
-          return true;
-        }
+  /*
+   * Returns true if the list already has a meeting at the same time in the same room.
+   */
+  private static boolean containsDuplicate(ArrayList<Meeting> meetings, Meeting meeting) {
+    for (Meeting other : meetings) {
+      if (meeting.isDuplicateOf(other)) {
+        return true;
       }
     }
     return false;
   }
 
+  /*
+   * Combines the time masks of all of the meetings into the time mask of this section. Sections
+   * with a single meeting share the mask of its time block.
+   */
+  private void buildTimeMask() {
+    if (meetings != null && meetings.length == 1) {
+      timeMask = meetings[0].getTimeMask();
+      return;
+    }
+    timeMask = new TimeMask();
+    if (meetings == null) {
+      return;
+    }
+    for (Meeting meeting : meetings) {
+      timeMask.or(meeting.getTimeMask());
+    }
+  }
+
+  // This method returns true if the two sections conflict with each other and
+  // returns false if they do not conflict.
+  public boolean conflictsWith(Section other) {
+    return timeMask.intersects(other.getTimeMask());
+  }
+
   // Getter Methods
 
   public String getSectionId() {
@@ -163,6 +208,22 @@ public class Section {
     return meetings;
   }
 
+  /**
+   * Returns the slots of the week this section occupies. The mask may be shared with its meetings
+   * and must not be modified.
+   */
+  public TimeMask getTimeMask() {
+    return timeMask;
+  }
+
+  /**
+   * Returns the sections this section stands for in a schedule. That's just this section, unless
+   * it is a bundle of corequisite sections.
+   */
+  public Section[] getParts() {
+    return new Section[] {this};
+  }
+
   @Override
   public String toString() {
     String output = "";
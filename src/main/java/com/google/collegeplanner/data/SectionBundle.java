@@ -0,0 +1,56 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/*
+ * This class represents sections of corequisite courses that have to be taken together, for
+ * example a lecture and its lab. The scheduler treats a bundle as a single section that meets
+ * whenever any of its parts meets, and schedules are serialized with the parts.
+ *
+ * A bundle only has as many open seats as its fullest part.
+ */
+public class SectionBundle extends Section {
+  private final Section[] parts;
+
+  public SectionBundle(Section[] parts) throws ParseException {
+    super(Arrays.stream(parts).map(Section::getSectionId).collect(Collectors.joining("+")),
+        Arrays.stream(parts).map(Section::getCourseId).collect(Collectors.joining("+")),
+        null,
+        Integer.toString(Arrays.stream(parts).mapToInt(Section::getOpenSeats).min().orElse(0)),
+        Integer.toString(Arrays.stream(parts).mapToInt(Section::getSeats).min().orElse(0)),
+        new String[0], getAllMeetings(parts));
+    this.parts = parts.clone();
+  }
+
+  private static Meeting[] getAllMeetings(Section[] parts) {
+    ArrayList<Meeting> meetings = new ArrayList<Meeting>();
+    for (Section part : parts) {
+      if (part.getMeetings() != null) {
+        meetings.addAll(Arrays.asList(part.getMeetings()));
+      }
+    }
+    return meetings.toArray(new Meeting[0]);
+  }
+
+  @Override
+  public Section[] getParts() {
+    return parts.clone();
+  }
+}
@@ -0,0 +1,281 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+ * This class holds every section of a semester in parallel arrays instead of Section and Meeting
+ * objects. Section i belongs to course getCourseIndex(i), its time mask is stored in
+ * masks[i * TimeMask.WORDS] onwards and its meetings are meetingTimes[meetingOffsets[i]] up to
+ * meetingOffsets[i + 1]. The sections of a course are stored next to each other.
+ *
+ * Scans such as finding every section within a time window only read the primitive arrays.
+ * Section objects are only built for the sections a caller asks for.
+ */
+public class SectionCatalog {
+  private final String[] courseIds;
+  // courseOffsets[c] is the index of the first section of course c.
+  private final int[] courseOffsets;
+  private final HashMap<String, Integer> courseIndices = new HashMap<String, Integer>();
+  // Courses with a section that couldn't be read are left out of the catalog.
+  private final HashSet<String> unreadableCourseIds;
+
+  private final int[] courseIndex;
+  private final int[] seats;
+  private final int[] openSeats;
+  private final long[] masks;
+  private final String[] sectionIds;
+  private final String[] waitlists;
+  // Sections read from Datastore without meetings or instructors have null arrays rather than
+  // empty ones, which the API responses keep.
+  private final BitSet missingMeetings = new BitSet();
+  private final BitSet missingInstructors = new BitSet();
+
+  private final int[] meetingOffsets;
+  private final MeetingTime[] meetingTimes;
+  private final String[] meetingDays;
+  private final String[] meetingRooms;
+  private final String[] meetingBuildings;
+
+  private final int[] instructorOffsets;
+  private final String[] instructors;
+
+  private SectionCatalog(ArrayList<String> courseIds, ArrayList<ArrayList<Section>> courses,
+      HashSet<String> unreadableCourseIds) {
+    this.courseIds = courseIds.toArray(new String[0]);
+    this.unreadableCourseIds = unreadableCourseIds;
+    courseOffsets = new int[courses.size() + 1];
+    int sectionCount = 0;
+    int meetingCount = 0;
+    int instructorCount = 0;
+    for (int course = 0; course < courses.size(); course++) {
+      courseIndices.putIfAbsent(this.courseIds[course], course);
+      courseOffsets[course] = sectionCount;
+      for (Section section : courses.get(course)) {
+        sectionCount++;
+        meetingCount += section.getMeetings() == null ? 0 : section.getMeetings().length;
+        instructorCount += section.getInstructors() == null ? 0 : section.getInstructors().length;
+      }
+    }
+    courseOffsets[courses.size()] = sectionCount;
+
+    courseIndex = new int[sectionCount];
+    seats = new int[sectionCount];
+    openSeats = new int[sectionCount];
+    masks = new long[sectionCount * TimeMask.WORDS];
+    sectionIds = new String[sectionCount];
+    waitlists = new String[sectionCount];
+    meetingOffsets = new int[sectionCount + 1];
+    meetingTimes = new MeetingTime[meetingCount];
+    meetingDays = new String[meetingCount];
+    meetingRooms = new String[meetingCount];
+    meetingBuildings = new String[meetingCount];
+    instructorOffsets = new int[sectionCount + 1];
+    instructors = new String[instructorCount];
+
+    int index = 0;
+    int meeting = 0;
+    int instructor = 0;
+    for (int course = 0; course < courses.size(); course++) {
+      for (Section section : courses.get(course)) {
+        courseIndex[index] = course;
+        seats[index] = section.getSeats();
+        openSeats[index] = section.getOpenSeats();
+        section.getTimeMask().copyTo(masks, index * TimeMask.WORDS);
+        sectionIds[index] = section.getSectionId();
+        waitlists[index] = section.getWaitlist();
+
+        meetingOffsets[index] = meeting;
+        if (section.getMeetings() == null) {
+          missingMeetings.set(index);
+        } else {
+          for (Meeting part : section.getMeetings()) {
+            meetingTimes[meeting] = part.getTime();
+            meetingDays[meeting] = part.getDaysString();
+            meetingRooms[meeting] = part.getRoom();
+            meetingBuildings[meeting] = part.getBuilding();
+            meeting++;
+          }
+        }
+
+        instructorOffsets[index] = instructor;
+        if (section.getInstructors() == null) {
+          missingInstructors.set(index);
+        } else {
+          for (String name : section.getInstructors()) {
+            instructors[instructor++] = name;
+          }
+        }
+        index++;
+      }
+    }
+    meetingOffsets[sectionCount] = meeting;
+    instructorOffsets[sectionCount] = instructor;
+  }
+
+  /**
+   * Builds the catalog from Course entities as DatastoreServlet stores them. A course with a
+   * section that can't be read is left out, so that it doesn't take the other courses with it.
+   * @param courseEntities The Course entities of the semester.
+   */
+  public static SectionCatalog fromEntities(Iterable<Entity> courseEntities) {
+    ArrayList<String> courseIds = new ArrayList<String>();
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    HashSet<String> unreadableCourseIds = new HashSet<String>();
+    for (Entity courseEntity : courseEntities) {
+      String courseId = (String) courseEntity.getProperty("course_id");
+      ArrayList<Section> sections = new ArrayList<Section>();
+      ArrayList<EmbeddedEntity> sectionEntities =
+          (ArrayList<EmbeddedEntity>) courseEntity.getProperty("sections");
+      try {
+        if (sectionEntities != null) {
+          for (EmbeddedEntity sectionEntity : sectionEntities) {
+            sections.add(new Section(sectionEntity));
+          }
+        }
+      } catch (ParseException e) {
+        unreadableCourseIds.add(courseId);
+        continue;
+      }
+      courseIds.add(courseId);
+      courses.add(sections);
+    }
+    return new SectionCatalog(courseIds, courses, unreadableCourseIds);
+  }
+
+  public int getCourseCount() {
+    return courseIds.length;
+  }
+
+  public int getSectionCount() {
+    return sectionIds.length;
+  }
+
+  /**
+   * Returns the index of the course with the given id, or -1 if the catalog doesn't have it.
+   */
+  public int findCourse(String courseId) {
+    Integer course = courseIndices.get(courseId);
+    return course == null ? -1 : course;
+  }
+
+  /**
+   * Returns true if the course with the given id was left out because a section of it couldn't be
+   * read.
+   */
+  public boolean isUnreadable(String courseId) {
+    return unreadableCourseIds.contains(courseId);
+  }
+
+  /**
+   * Returns the index of the section with the given ids, or -1 if the catalog doesn't have it.
+   */
+  public int findSection(String courseId, String sectionId) {
+    int course = findCourse(courseId);
+    if (course < 0) {
+      return -1;
+    }
+    for (int i = courseOffsets[course]; i < courseOffsets[course + 1]; i++) {
+      if (sectionIds[i].equals(sectionId)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the sections of the course with the given id, or null if the catalog doesn't have it.
+   */
+  public ArrayList<Section> getSections(String courseId) {
+    int course = findCourse(courseId);
+    if (course < 0) {
+      return null;
+    }
+    ArrayList<Section> sections = new ArrayList<Section>();
+    for (int i = courseOffsets[course]; i < courseOffsets[course + 1]; i++) {
+      sections.add(getSection(i));
+    }
+    return sections;
+  }
+
+  /**
+   * Builds the Section object of the section with the given index.
+   */
+  public Section getSection(int index) {
+    Meeting[] meetings = null;
+    if (!missingMeetings.get(index)) {
+      meetings = new Meeting[meetingOffsets[index + 1] - meetingOffsets[index]];
+      for (int i = 0; i < meetings.length; i++) {
+        int meeting = meetingOffsets[index] + i;
+        meetings[i] = new Meeting(meetingDays[meeting], meetingRooms[meeting],
+            meetingBuildings[meeting], meetingTimes[meeting]);
+      }
+    }
+    String[] names = null;
+    if (!missingInstructors.get(index)) {
+      names = new String[instructorOffsets[index + 1] - instructorOffsets[index]];
+      System.arraycopy(instructors, instructorOffsets[index], names, 0, names.length);
+    }
+    return new Section(sectionIds[index], courseIds[courseIndex[index]], waitlists[index],
+        openSeats[index], seats[index], names, meetings,
+        TimeMask.fromWords(masks, index * TimeMask.WORDS));
+  }
+
+  /**
+   * Returns the indices of the sections that only meet within the given time window.
+   * @param window The slots of the week the sections may occupy.
+   */
+  public int[] getSectionsWithin(TimeMask window) {
+    long[] windowWords = new long[TimeMask.WORDS];
+    window.copyTo(windowWords, 0);
+    int[] found = new int[sectionIds.length];
+    int count = 0;
+    for (int i = 0; i < sectionIds.length; i++) {
+      int offset = i * TimeMask.WORDS;
+      boolean within = true;
+      for (int word = 0; word < TimeMask.WORDS && within; word++) {
+        within = (masks[offset + word] & ~windowWords[word]) == 0;
+      }
+      if (within) {
+        found[count++] = i;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  public int getCourseIndex(int section) {
+    return courseIndex[section];
+  }
+
+  public String getCourseId(int course) {
+    return courseIds[course];
+  }
+
+  public int getSeats(int section) {
+    return seats[section];
+  }
+
+  public int getOpenSeats(int section) {
+    return openSeats[section];
+  }
+}
@@ -14,62 +14,367 @@
 
 package com.google.collegeplanner.data;
 
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
 
 /**
  * This class takes a 2D array of Section objects and returns a list of
  * Schedule objects that represent working schedules with no conflicts.
  */
-public class SemesterScheduler {
+public class SemesterScheduler implements ScheduleEngine {
   /**
    * This variable represents the max number
    * of schedules the scheduler will create.
    */
   private final int MAX_SCHEDULES = 15;
+  /**
+   * Diverse schedules are picked out of up to this many random samples, and the sampling visits
+   * at most DIVERSITY_STEPS nodes in total.
+   */
+  private final int DIVERSITY_SAMPLES = 8 * MAX_SCHEDULES;
+  private final long DIVERSITY_STEPS = 200000;
   private ArrayList<ArrayList<Section>> sections;
   private ArrayList<Schedule> possibleSchedules;
-  private Schedule workingSchedule;
+  // If true, the search picks the course with the fewest remaining sections at every level
+  // instead of going through the courses in the order they were given.
+  private boolean mostConstrainedFirst;
+  // A cursor for the position after the last schedule in possibleSchedules, or null if the
+  // search has no more schedules.
+  private String nextCursor;
+  // Bounds the work of every search this scheduler runs, or null for no bound.
+  private SearchLimit limit;
+  private boolean truncated;
 
   public SemesterScheduler(ArrayList<ArrayList<Section>> sections) {
     this.sections = sections;
     possibleSchedules = new ArrayList<Schedule>();
-    workingSchedule = new Schedule();
   }
 
+  /**
+   * Makes the search go through the courses with the fewest remaining sections first. This finds
+   * dead ends much earlier, but changes which schedules come first.
+   */
+  public void setMostConstrainedFirst(boolean mostConstrainedFirst) {
+    this.mostConstrainedFirst = mostConstrainedFirst;
+  }
+
+  /**
+   * Makes every search of this scheduler stop once the given limit is reached. The schedules
+   * found until then are still returned, and isTruncated tells whether that happened.
+   */
+  @Override
+  public void setSearchLimit(SearchLimit limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns true if the last search stopped at the search limit before it was done.
+   */
+  @Override
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
   public ArrayList<Schedule> getPossibleSchedules() {
     if (!possibleSchedules.isEmpty() || sections.size() == 0) {
       return possibleSchedules;
     }
 
-    int sectionListSizes[] = new int[sections.size()];
-    for (int i = 0; i < sectionListSizes.length; i++) {
-      sectionListSizes[i] = sections.get(i).size();
+    ScheduleIterator iterator = iterator();
+    while (possibleSchedules.size() < MAX_SCHEDULES && iterator.hasNext()) {
+      possibleSchedules.add(iterator.next());
+    }
+    truncated = iterator.isTruncated();
+    // A truncated search can be continued from where it stopped.
+    if (possibleSchedules.size() == MAX_SCHEDULES || truncated) {
+      nextCursor = iterator.getCursor();
     }
-
-    nestedLoop(sectionListSizes, 0);
     return possibleSchedules;
   }
 
   /**
-   * This function is a recursivly nested for loop.
-   * @param sectionListSizes the end case number for the nested for loops
-   * @param level the depth of the nested for loop the method is currently on.
+   * Returns the schedules with the lowest cost under the given preferences, from best to worst.
+   * If the search is truncated, these are the best of the schedules it got to.
+   * Branches of the search that can't beat the schedules found so far are skipped, so this is
+   * much faster than scoring every possible schedule.
+   * @param preferences How much each property of a schedule is penalized.
    */
-  private void nestedLoop(int[] sectionListSizes, int level) {
-    if (possibleSchedules.size() >= MAX_SCHEDULES) {
-      return;
+  public ArrayList<Schedule> getBestSchedules(SchedulePreferences preferences) {
+    ArrayList<Schedule> bestSchedules = new ArrayList<Schedule>();
+    if (sections.size() == 0) {
+      return bestSchedules;
+    }
+
+    CompatibilityMatrix matrix = new CompatibilityMatrix(sections);
+    ScheduleScorer scorer = new ScheduleScorer(matrix, preferences, MAX_SCHEDULES);
+    ScheduleSearch search = new ScheduleSearch(matrix, mostConstrainedFirst);
+    // Interchangeable sections can still differ in open seats, which the scorer penalizes.
+    search.setRepresentativesOnly(false);
+    search.setBranchFilter(scorer);
+    if (limit != null) {
+      search.setStopCondition(limit.newCheck());
+    }
+    search.run(new int[0], sections.size(), path -> {
+      scorer.record(path);
+      return true;
+    });
+    truncated = search.wasStopped();
+
+    for (int[] path : scorer.getBestPaths()) {
+      bestSchedules.add(matrix.buildSchedule(path));
+    }
+    return bestSchedules;
+  }
+
+  /**
+   * Returns a copy of the given courses without the sections that overlap the blocked time. This
+   * prunes those sections from every search up front instead of rejecting each schedule that
+   * contains them.
+   * @param sections The candidate sections of every course.
+   * @param blocked The time that no section may occupy.
+   */
+  public static ArrayList<ArrayList<Section>> removeBlockedSections(
+      ArrayList<ArrayList<Section>> sections, TimeMask blocked) {
+    ArrayList<ArrayList<Section>> available = new ArrayList<ArrayList<Section>>();
+    for (ArrayList<Section> course : sections) {
+      ArrayList<Section> courseSections = new ArrayList<Section>();
+      for (Section section : course) {
+        if (!section.getTimeMask().intersects(blocked)) {
+          courseSections.add(section);
+        }
+      }
+      available.add(courseSections);
+    }
+    return available;
+  }
+
+  /**
+   * Returns schedules that differ from each other as much as possible, instead of the first ones
+   * in search order, which usually only differ in the last courses. Schedules are sampled from
+   * random points of the search, and then picked one at a time so that each one has as many
+   * courses as possible at a different time than every schedule picked before it.
+   * @param random The source of randomness. The same seed gives the same schedules.
+   */
+  public ArrayList<Schedule> getDiverseSchedules(Random random) {
+    ArrayList<Schedule> diverseSchedules = new ArrayList<Schedule>();
+    if (sections.size() == 0) {
+      return diverseSchedules;
+    }
+
+    CompatibilityMatrix matrix = new CompatibilityMatrix(sections);
+    BooleanSupplier budgetCheck = new SearchLimit(Long.MAX_VALUE, DIVERSITY_STEPS).newCheck();
+    BooleanSupplier limitCheck = limit == null ? () -> false : limit.newCheck();
+    ScheduleSampler sampler = new ScheduleSampler(
+        matrix, random, () -> budgetCheck.getAsBoolean() || limitCheck.getAsBoolean());
+
+    // Samples are told apart by their representatives, since schedules that only differ in
+    // interchangeable sections aren't meaningfully different.
+    LinkedHashSet<IndexedSchedule> samples = new LinkedHashSet<IndexedSchedule>();
+    for (int i = 0; i < DIVERSITY_SAMPLES; i++) {
+      int[] path = sampler.sample();
+      if (path == null) {
+        break;
+      }
+      samples.add(IndexedSchedule.of(matrix, path));
+    }
+    truncated = limit != null && limit.isReached();
+
+    for (IndexedSchedule sample : pickSpreadOut(new ArrayList<IndexedSchedule>(samples))) {
+      int[] path = new int[sections.size()];
+      for (int course = 0; course < path.length; course++) {
+        int[] members = matrix.getMembers(sample.getSectionIndex(course));
+        path[course] = members[random.nextInt(members.length)];
+      }
+      diverseSchedules.add(matrix.buildSchedule(path));
+    }
+    return diverseSchedules;
+  }
+
+  /**
+   * Picks up to MAX_SCHEDULES of the given schedules, each time taking the one whose smallest
+   * distance to the schedules picked so far is the largest. The distance between two schedules
+   * is the number of courses they have different sections for.
+   */
+  private ArrayList<IndexedSchedule> pickSpreadOut(ArrayList<IndexedSchedule> candidates) {
+    ArrayList<IndexedSchedule> picked = new ArrayList<IndexedSchedule>();
+    int[] minDistance = new int[candidates.size()];
+    Arrays.fill(minDistance, Integer.MAX_VALUE);
+    boolean[] used = new boolean[candidates.size()];
+    while (picked.size() < MAX_SCHEDULES && picked.size() < candidates.size()) {
+      int best = -1;
+      for (int i = 0; i < candidates.size(); i++) {
+        if (!used[i] && (best == -1 || minDistance[i] > minDistance[best])) {
+          best = i;
+        }
+      }
+      used[best] = true;
+      picked.add(candidates.get(best));
+      for (int i = 0; i < candidates.size(); i++) {
+        minDistance[i] =
+            Math.min(minDistance[i], distance(candidates.get(i), candidates.get(best)));
+      }
     }
-    if (level == sectionListSizes.length) {
-      possibleSchedules.add(new Schedule(workingSchedule));
-    } else {
-      for (int i = 0; i < sectionListSizes[level]; i++) {
-        if (workingSchedule.addClass(sections.get(level).get(i))) {
-          nestedLoop(sectionListSizes, level + 1);
-          // Removes sections.get(level).get(i) as it was just previously added
-          workingSchedule.removeLastClass();
+    return picked;
+  }
+
+  private int distance(IndexedSchedule first, IndexedSchedule second) {
+    int distance = 0;
+    for (int course = 0; course < sections.size(); course++) {
+      if (first.getSectionIndex(course) != second.getSectionIndex(course)) {
+        distance++;
+      }
+    }
+    return distance;
+  }
+
+  /**
+   * Returns a copy of the given courses without the sections that are full, with the sections of
+   * every course ordered from the most to the least available. Since the search tries sections
+   * in order, schedules with more open seats come first.
+   * @param sections The candidate sections of every course.
+   * @param maxWaitlist Full sections whose waitlist is at most this long are kept after all the
+   *     open ones, shortest waitlist first. If negative, every full section is dropped.
+   */
+  public static ArrayList<ArrayList<Section>> removeFullSections(
+      ArrayList<ArrayList<Section>> sections, int maxWaitlist) {
+    ArrayList<ArrayList<Section>> available = new ArrayList<ArrayList<Section>>();
+    for (ArrayList<Section> course : sections) {
+      ArrayList<Section> open = new ArrayList<Section>();
+      ArrayList<Section> waitlisted = new ArrayList<Section>();
+      for (Section section : course) {
+        if (section.getOpenSeats() > 0) {
+          open.add(section);
+        } else if (getWaitlistLength(section) <= maxWaitlist) {
+          waitlisted.add(section);
+        }
+      }
+      open.sort(Comparator.comparingInt(Section::getOpenSeats).reversed());
+      waitlisted.sort(Comparator.comparingInt(SemesterScheduler::getWaitlistLength));
+      open.addAll(waitlisted);
+      available.add(open);
+    }
+    return available;
+  }
+
+  /**
+   * Returns the number of students on the waitlist of the given section. A missing or malformed
+   * waitlist counts as empty.
+   */
+  private static int getWaitlistLength(Section section) {
+    try {
+      return Integer.parseInt(section.getWaitlist().trim());
+    } catch (NullPointerException | NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns a copy of the given courses in which every group of corequisite courses is replaced
+   * by a single course, at the position of its first member. The sections of that course are
+   * bundles of one section of every member, for every combination that doesn't conflict. The
+   * search then never tries a combination that can't work and has fewer levels to go through.
+   * @param sections The candidate sections of every course.
+   * @param groups Lists of indices of courses that have to be taken together.
+   * @throws IllegalArgumentException if a course index is invalid or in more than one group.
+   */
+  public static ArrayList<ArrayList<Section>> bundleCorequisites(
+      ArrayList<ArrayList<Section>> sections, List<List<Integer>> groups)
+      throws IllegalArgumentException {
+    // groupOf[i] is the group course i belongs to, or -1.
+    int[] groupOf = new int[sections.size()];
+    Arrays.fill(groupOf, -1);
+    for (int group = 0; group < groups.size(); group++) {
+      for (int course : groups.get(group)) {
+        if (course < 0 || course >= sections.size() || groupOf[course] != -1) {
+          throw new IllegalArgumentException("Invalid corequisite group.");
         }
+        groupOf[course] = group;
+      }
+    }
+
+    ArrayList<ArrayList<Section>> bundled = new ArrayList<ArrayList<Section>>();
+    boolean[] added = new boolean[groups.size()];
+    for (int course = 0; course < sections.size(); course++) {
+      int group = groupOf[course];
+      if (group == -1 || groups.get(group).size() < 2) {
+        bundled.add(sections.get(course));
+      } else if (!added[group]) {
+        added[group] = true;
+        ArrayList<Section> bundles = new ArrayList<Section>();
+        addBundles(sections, groups.get(group), new Section[groups.get(group).size()], 0,
+            new TimeMask(), bundles);
+        bundled.add(bundles);
+      }
+    }
+    return bundled;
+  }
+
+  /**
+   * Adds a bundle for every combination of sections of the courses in the group from the given
+   * position on that doesn't conflict with the sections picked before it.
+   */
+  private static void addBundles(ArrayList<ArrayList<Section>> sections, List<Integer> group,
+      Section[] picked, int position, TimeMask occupied, ArrayList<Section> bundles) {
+    if (position == group.size()) {
+      try {
+        bundles.add(new SectionBundle(picked));
+      } catch (ParseException e) {
+        // Every part already has a valid section id, so this can't happen.
+      }
+      return;
+    }
+    for (Section section : sections.get(group.get(position))) {
+      if (occupied.intersects(section.getTimeMask())) {
+        continue;
       }
+      picked[position] = section;
+      occupied.or(section.getTimeMask());
+      addBundles(sections, group, picked, position + 1, occupied, bundles);
+      occupied.andNot(section.getTimeMask());
     }
   }
+
+  /**
+   * Returns a cursor that continues the search after the schedules returned by
+   * getPossibleSchedules, or null if all of them were returned.
+   */
+  @Override
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Throws if the given cursor can't be one that this scheduler or its iterators returned. Unlike
+   * iterator(cursor), it doesn't check which courses the cursor belongs to, so it can run before
+   * they are loaded.
+   */
+  public static void checkCursor(String cursor) throws IllegalArgumentException {
+    ScheduleCursor.checkFormat(cursor, false);
+  }
+
+  /**
+   * Returns an iterator over every possible schedule, starting from the first one.
+   */
+  public ScheduleIterator iterator() {
+    return new ScheduleIterator(
+        new CompatibilityMatrix(sections), mostConstrainedFirst, null, limit);
+  }
+
+  /**
+   * Returns an iterator over the possible schedules that come after the given cursor.
+   * @param cursor A cursor from a previous search over the same courses, or null to start from
+   *     the first schedule.
+   * @throws IllegalArgumentException if the cursor doesn't belong to these courses.
+   */
+  public ScheduleIterator iterator(String cursor) throws IllegalArgumentException {
+    return new ScheduleIterator(
+        new CompatibilityMatrix(sections), mostConstrainedFirst, cursor, limit);
+  }
 }
@@ -0,0 +1,235 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.time.DayOfWeek;
+import java.util.Arrays;
+
+/*
+ * This class represents the occupied time of a school week as a bitmask. Every weekday is split
+ * into 5-minute slots and each slot is one bit, so checking whether two meetings, sections or
+ * schedules overlap only takes a few AND operations.
+ *
+ * Intervals are rounded outwards to whole slots. UMD meetings start and end on 5-minute
+ * boundaries, so in practice the mask is exact.
+ */
+public class TimeMask {
+  // The number of minutes that a single bit of the mask represents.
+  public static final int SLOT_MINUTES = 5;
+  // The number of slots in a single day.
+  public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+  // Only Monday through Friday are represented since there are no classes on the weekend.
+  private static final int DAYS = 5;
+  // The number of longs a mask is stored in.
+  static final int WORDS = (DAYS * SLOTS_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+
+  private final long[] words;
+
+  public TimeMask() {
+    words = new long[WORDS];
+  }
+
+  public TimeMask(TimeMask other) {
+    words = other.words.clone();
+  }
+
+  /**
+   * Marks the time between startTime and endTime on the given day as occupied.
+   * @param day The weekday the interval takes place on.
+   * @param startTime The start of the interval in minutes after midnight.
+   * @param endTime The end of the interval in minutes after midnight.
+   */
+  public void addInterval(DayOfWeek day, int startTime, int endTime) {
+    if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+      throw new IllegalArgumentException("Invalid Day, no Weekends on Academic Calendar");
+    }
+    int startSlot = Math.max(0, startTime / SLOT_MINUTES);
+    int endSlot = Math.min(SLOTS_PER_DAY, (endTime + SLOT_MINUTES - 1) / SLOT_MINUTES);
+    if (startSlot >= endSlot) {
+      return;
+    }
+
+    int dayOffset = (day.getValue() - 1) * SLOTS_PER_DAY;
+    setBits(dayOffset + startSlot, dayOffset + endSlot);
+  }
+
+  /**
+   * Sets every bit from fromIndex (inclusive) to toIndex (exclusive).
+   */
+  private void setBits(int fromIndex, int toIndex) {
+    int firstWord = fromIndex / Long.SIZE;
+    int lastWord = (toIndex - 1) / Long.SIZE;
+    long firstMask = -1L << (fromIndex % Long.SIZE);
+    long lastMask = -1L >>> (Long.SIZE - 1 - (toIndex - 1) % Long.SIZE);
+
+    if (firstWord == lastWord) {
+      words[firstWord] |= firstMask & lastMask;
+      return;
+    }
+    words[firstWord] |= firstMask;
+    for (int i = firstWord + 1; i < lastWord; i++) {
+      words[i] = -1L;
+    }
+    words[lastWord] |= lastMask;
+  }
+
+  /**
+   * Returns a mask with the WORDS words starting at the given offset of the array.
+   */
+  static TimeMask fromWords(long[] array, int offset) {
+    TimeMask mask = new TimeMask();
+    System.arraycopy(array, offset, mask.words, 0, WORDS);
+    return mask;
+  }
+
+  /**
+   * Copies the words of this mask into the array, starting at the given offset.
+   */
+  void copyTo(long[] array, int offset) {
+    System.arraycopy(words, 0, array, offset, WORDS);
+  }
+
+  /**
+   * Makes this mask a copy of the other mask.
+   */
+  public void copyFrom(TimeMask other) {
+    System.arraycopy(other.words, 0, words, 0, WORDS);
+  }
+
+  /**
+   * Returns the first occupied slot of the given day, or -1 if the day is free.
+   */
+  public int getFirstSlot(DayOfWeek day) {
+    int dayOffset = (day.getValue() - 1) * SLOTS_PER_DAY;
+    for (int i = dayOffset / Long.SIZE; i <= (dayOffset + SLOTS_PER_DAY - 1) / Long.SIZE; i++) {
+      long word = words[i] & dayBits(i, dayOffset);
+      if (word != 0) {
+        return i * Long.SIZE + Long.numberOfTrailingZeros(word) - dayOffset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the slot after the last occupied slot of the given day, or -1 if the day is free.
+   */
+  public int getEndSlot(DayOfWeek day) {
+    int dayOffset = (day.getValue() - 1) * SLOTS_PER_DAY;
+    for (int i = (dayOffset + SLOTS_PER_DAY - 1) / Long.SIZE; i >= dayOffset / Long.SIZE; i--) {
+      long word = words[i] & dayBits(i, dayOffset);
+      if (word != 0) {
+        return (i + 1) * Long.SIZE - Long.numberOfLeadingZeros(word) - dayOffset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of occupied slots on the given day.
+   */
+  public int countSlots(DayOfWeek day) {
+    int dayOffset = (day.getValue() - 1) * SLOTS_PER_DAY;
+    int count = 0;
+    for (int i = dayOffset / Long.SIZE; i <= (dayOffset + SLOTS_PER_DAY - 1) / Long.SIZE; i++) {
+      count += Long.bitCount(words[i] & dayBits(i, dayOffset));
+    }
+    return count;
+  }
+
+  /**
+   * Returns the bits of the given word that belong to the day starting at dayOffset.
+   */
+  private static long dayBits(int word, int dayOffset) {
+    int from = Math.max(dayOffset - word * Long.SIZE, 0);
+    int to = Math.min(dayOffset + SLOTS_PER_DAY - word * Long.SIZE, Long.SIZE);
+    long fromMask = -1L << from;
+    long toMask = to == Long.SIZE ? -1L : (1L << to) - 1;
+    return fromMask & toMask;
+  }
+
+  /**
+   * Returns true if this mask and the other mask share at least one occupied slot.
+   * @param other The mask this object is being compared with.
+   */
+  public boolean intersects(TimeMask other) {
+    for (int i = 0; i < WORDS; i++) {
+      if ((words[i] & other.words[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Marks every slot that is occupied in the other mask as occupied in this mask.
+   */
+  public void or(TimeMask other) {
+    for (int i = 0; i < WORDS; i++) {
+      words[i] |= other.words[i];
+    }
+  }
+
+  /**
+   * Clears every slot that is not occupied in the other mask from this mask.
+   */
+  public void and(TimeMask other) {
+    for (int i = 0; i < WORDS; i++) {
+      words[i] &= other.words[i];
+    }
+  }
+
+  /**
+   * Clears every slot that is occupied in the other mask from this mask.
+   */
+  public void andNot(TimeMask other) {
+    for (int i = 0; i < WORDS; i++) {
+      words[i] &= ~other.words[i];
+    }
+  }
+
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof TimeMask)) {
+      return false;
+    }
+    return Arrays.equals(words, ((TimeMask) other).words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  /**
+   * Returns the mask as hex words, so equal strings mean equal masks.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (long word : words) {
+      builder.append(Long.toHexString(word)).append('.');
+    }
+    return builder.toString();
+  }
+}
@@ -17,18 +17,27 @@ package com.google.collegeplanner.servlets;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustAllStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONArray;
@@ -36,8 +45,53 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-/** Provides an interface for making outside API calls. */
+/**
+ * Provides an interface for making outside API calls.
+ *
+ * Every instance shares one HTTP client with a pool of kept-alive connections, so repeated calls
+ * to the same host skip the TCP and TLS handshakes. The client is thread-safe and is never
+ * closed.
+ */
 public class ApiUtil {
+  static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+  static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+  // How long a call waits for a free connection when every pooled connection is in use.
+  static final int DEFAULT_LEASE_TIMEOUT_MILLIS = 10000;
+  /*
+   * The pool holds at most MAX_CONNECTIONS_PER_HOST connections to a single host, and nearly
+   * every call goes to api.umd.io. Callers that make many calls at once, like a catalog
+   * download, have to keep their concurrency below it.
+   */
+  static final int MAX_CONNECTIONS_PER_HOST = 64;
+  private static final int MAX_CONNECTIONS = MAX_CONNECTIONS_PER_HOST + 16;
+  // Connections are kept this long if the server doesn't say how long it keeps them.
+  private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+  // Connections that have been idle this long are closed. The check runs at most once per
+  // interval during a request, since App Engine doesn't allow a background thread for it.
+  private static final long IDLE_EVICTION_MILLIS = 30000;
+  // Pooled connections that were idle this long are checked before they are reused.
+  private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+  private final RequestConfig requestConfig;
+
+  public ApiUtil() {
+    this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS,
+        DEFAULT_LEASE_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param connectTimeoutMillis How long to wait for a connection to the API.
+   * @param socketTimeoutMillis How long to wait for data from the API once connected.
+   * @param leaseTimeoutMillis How long to wait for a free connection from the shared pool.
+   */
+  public ApiUtil(int connectTimeoutMillis, int socketTimeoutMillis, int leaseTimeoutMillis) {
+    requestConfig = RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setConnectionRequestTimeout(leaseTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .build();
+  }
+
   /**
    * Returns a json array given a URI.
    * @param uri The endpoint that will be requested
@@ -71,36 +125,102 @@ public class ApiUtil {
   }
 
   /**
-   * Makes a GET request and returns the reponse json.
+   * Makes a GET request and returns the reponse json, or an empty string if the request failed
+   * or no pooled connection became free in time.
    * @param uri The endpoint that will be requested
    */
-  private String requestApi(URI uri) {
+  String requestApi(URI uri) {
     if (uri == null) {
       return "";
     }
 
     HttpGet apiRequest = new HttpGet(uri);
+    apiRequest.setConfig(requestConfig);
+    CloseableHttpClient httpClient = SharedClient.get();
+    if (httpClient == null) {
+      return "";
+    }
 
-    // Ignore any SSL certificate validations.
-    // Reason: The UMD API currently does not have a valid SSL certificate. We can change
-    // this code if/when the UMD API refreshes their certificate.
-    try (CloseableHttpClient httpClient =
-             HttpClients.custom()
-                 .setSSLContext(new SSLContextBuilder()
-                                    .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
-                                    .build())
-                 .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-                 .build();
-         CloseableHttpResponse apiResponse = httpClient.execute(apiRequest)) {
+    // The response is closed, which returns the connection to the pool once the entity has been
+    // read.
+    try (CloseableHttpResponse apiResponse = httpClient.execute(apiRequest)) {
       HttpEntity entity = apiResponse.getEntity();
       String json = EntityUtils.toString(entity);
       if (entity != null
           && apiResponse.getStatusLine().getStatusCode() == HttpServletResponse.SC_OK) {
         return json;
       }
-    } catch (
-        NoSuchAlgorithmException | KeyManagementException | KeyStoreException | IOException e) {
+    } catch (IOException e) {
     }
     return "";
   }
+
+  /**
+   * Holds the shared client. It is created on first use, so classes that never make a call
+   * don't build it.
+   */
+  private static class SharedClient {
+    private static final PoolingHttpClientConnectionManager CONNECTIONS = createConnections();
+    private static final CloseableHttpClient CLIENT = createClient();
+    private static final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+    /**
+     * Returns the shared client, or null if it couldn't be created. Closes the connections that
+     * have been idle for too long first.
+     */
+    static CloseableHttpClient get() {
+      if (CONNECTIONS == null) {
+        return null;
+      }
+      long now = System.nanoTime();
+      long last = lastEviction.get();
+      if (now - last > TimeUnit.MILLISECONDS.toNanos(IDLE_EVICTION_MILLIS)
+          && lastEviction.compareAndSet(last, now)) {
+        CONNECTIONS.closeExpiredConnections();
+        CONNECTIONS.closeIdleConnections(IDLE_EVICTION_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      return CLIENT;
+    }
+
+    private static PoolingHttpClientConnectionManager createConnections() {
+      // Ignore any SSL certificate validations.
+      // Reason: The UMD API currently does not have a valid SSL certificate. We can change
+      // this code if/when the UMD API refreshes their certificate.
+      SSLContext sslContext;
+      try {
+        sslContext =
+            new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build();
+      } catch (GeneralSecurityException e) {
+        return null;
+      }
+      Registry<ConnectionSocketFactory> sockets =
+          RegistryBuilder.<ConnectionSocketFactory>create()
+              .register("http", PlainConnectionSocketFactory.getSocketFactory())
+              .register("https",
+                  new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+              .build();
+
+      PoolingHttpClientConnectionManager connections =
+          new PoolingHttpClientConnectionManager(sockets);
+      connections.setMaxTotal(MAX_CONNECTIONS);
+      connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+      connections.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+      return connections;
+    }
+
+    private static CloseableHttpClient createClient() {
+      if (CONNECTIONS == null) {
+        return null;
+      }
+      return HttpClients.custom()
+          .setConnectionManager(CONNECTIONS)
+          .setConnectionManagerShared(true)
+          .setKeepAliveStrategy((response, context) -> {
+            long keepAlive =
+                DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MILLIS;
+          })
+          .build();
+    }
+  }
 }
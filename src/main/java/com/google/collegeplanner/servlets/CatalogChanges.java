@@ -0,0 +1,116 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The change log of one catalog download: how many courses were added, updated, left unchanged
+ * and removed, and which ones changed. Each download stores its log as a "CatalogSync" entity.
+ */
+public class CatalogChanges {
+  private final Date started = new Date();
+  private Date finished;
+  private boolean complete;
+  private int added;
+  private int updated;
+  private int unchanged;
+  private int removed;
+  private final List<String> changedCourseIds = new ArrayList<String>();
+
+  void courseAdded(String courseId) {
+    added++;
+    changedCourseIds.add(courseId);
+  }
+
+  void courseUpdated(String courseId) {
+    updated++;
+    changedCourseIds.add(courseId);
+  }
+
+  void courseUnchanged(String courseId) {
+    unchanged++;
+  }
+
+  void courseRemoved(String courseId) {
+    removed++;
+    changedCourseIds.add(courseId);
+  }
+
+  /**
+   * Marks the download as over.
+   * @param complete Whether every course was downloaded. Removed courses are only known then.
+   */
+  void finish(boolean complete) {
+    this.finished = new Date();
+    this.complete = complete;
+  }
+
+  /**
+   * Returns whether any stored course was added, updated or removed.
+   */
+  public boolean hasChanges() {
+    return !changedCourseIds.isEmpty();
+  }
+
+  /**
+   * Returns the log as a "CatalogSync" entity.
+   */
+  public Entity toEntity() {
+    Entity entity = new Entity("CatalogSync");
+    entity.setProperty("started", started);
+    entity.setProperty("finished", finished);
+    entity.setProperty("complete", complete);
+    entity.setProperty("added", added);
+    entity.setProperty("updated", updated);
+    entity.setProperty("unchanged", unchanged);
+    entity.setProperty("removed", removed);
+    entity.setUnindexedProperty("changed_course_ids", changedCourseIds);
+    return entity;
+  }
+
+  // Getter Methods
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public int getAdded() {
+    return added;
+  }
+
+  public int getUpdated() {
+    return updated;
+  }
+
+  public int getUnchanged() {
+    return unchanged;
+  }
+
+  public int getRemoved() {
+    return removed;
+  }
+
+  /**
+   * Returns the ids of the added, updated and removed courses.
+   */
+  public List<String> getChangedCourseIds() {
+    return Collections.unmodifiableList(changedCourseIds);
+  }
+}
@@ -0,0 +1,746 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.collegeplanner.data.Course;
+import com.google.collegeplanner.data.Meeting;
+import com.google.collegeplanner.data.Section;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.utils.URIBuilder;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Downloads every course and its sections from the UMD API and stores them in datastore.
+ *
+ * The work runs as a pipeline of stages joined by bounded queues, so a slow stage holds back the
+ * ones before it instead of buffering the whole catalog:
+ * page fetchers -> section fetchers -> transformers -> writer.
+ * The fetchers and transformers run on their own threads. The writer runs on the calling thread,
+ * since App Engine only allows datastore calls from request threads, and reads and writes the
+ * courses in batches. With one page fetcher and one section fetcher, everything runs on the
+ * calling thread in the order of the API: a page, then the sections of each of its courses, then
+ * the next page.
+ */
+public class CatalogIngester {
+  /*
+   * The UMD API only gives back 30 courses max per request. To see more results, we have to
+   * cycle through the "pages". There's about 150 pages, so 200 is a safe maximum for us.
+   */
+  static final int PAGE_LIMIT = 200;
+  /*
+   * The bulk listing of sections has about 100 pages of SECTIONS_PER_PAGE sections, the most
+   * the UMD API gives back per request.
+   */
+  static final int SECTIONS_PAGE_LIMIT = 500;
+  static final int SECTIONS_PER_PAGE = 100;
+  // Datastore accepts at most 500 entities per put and 1000 keys per get. Course entities can
+  // be large, and a put is also limited to 10MB.
+  static final int MAX_BATCH_SIZE = 500;
+  static final int DEFAULT_BATCH_SIZE = 100;
+  static final int DEFAULT_QUEUE_CAPACITY = 256;
+  // Thread counts are capped, since they may come from a request. The fetchers together leave
+  // RESERVED_CONNECTIONS of ApiUtil's connections to api.umd.io for the other servlets.
+  static final int RESERVED_CONNECTIONS = 24;
+  static final int MAX_PAGE_FETCHERS = 8;
+  static final int MAX_SECTION_FETCHERS =
+      ApiUtil.MAX_CONNECTIONS_PER_HOST - MAX_PAGE_FETCHERS - RESERVED_CONNECTIONS;
+  static final int MAX_TRANSFORMERS = 8;
+  // How often the writer checks for failures and the deadline while it waits for courses.
+  private static final long POLL_MILLIS = 100;
+  // The properties of a course entity that come from the UMD API.
+  private static final String[] HASHED_PROPERTIES = {"course_id", "name", "semester", "credits",
+      "dept_id", "description", "coreqs", "prereqs", "restrictions", "additional_info",
+      "credit_granted_for", "section_ids", "sections"};
+  private static final ThreadFactory THREAD_FACTORY = runnable -> {
+    Thread thread = new Thread(runnable, "catalog-ingester");
+    thread.setDaemon(true);
+    return thread;
+  };
+
+  private final DatastoreService datastore;
+  private final ApiUtil apiUtil;
+  private int pageFetchers = 1;
+  private int sectionFetchers = 1;
+  private int transformers = 1;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+  private RateLimiter rateLimiter = new RateLimiter(0);
+  private long deadlineMillis = 0;
+  // The sections of every course by course id, if they are fetched in bulk. Otherwise null.
+  private HashMap<String, JSONArray> sectionsByCourse;
+
+  // Shared by the stages of a pipelined run.
+  private final AtomicInteger nextPage = new AtomicInteger(1);
+  // The first page known to be empty. No fetcher requests it or any later page.
+  private final AtomicInteger endPage = new AtomicInteger(PAGE_LIMIT + 1);
+  private volatile IOException failure;
+  // The ids of every course listed on a page, whether or not it could be parsed or stored.
+  private final Set<String> seenCourseIds = ConcurrentHashMap.newKeySet();
+  private final CatalogChanges changes = new CatalogChanges();
+  private long deadlineNanos;
+
+  public CatalogIngester(DatastoreService datastore, ApiUtil apiUtil) {
+    this.datastore = datastore;
+    this.apiUtil = apiUtil;
+  }
+
+  /**
+   * Sets how many pages of courses are fetched at once, at most MAX_PAGE_FETCHERS.
+   */
+  public void setPageFetchers(int pageFetchers) {
+    this.pageFetchers = Math.max(1, Math.min(MAX_PAGE_FETCHERS, pageFetchers));
+  }
+
+  /**
+   * Sets how many courses have their sections fetched at once, at most MAX_SECTION_FETCHERS.
+   */
+  public void setSectionFetchers(int sectionFetchers) {
+    this.sectionFetchers = Math.max(1, Math.min(MAX_SECTION_FETCHERS, sectionFetchers));
+  }
+
+  /**
+   * Sets how many threads turn fetched sections into entities, at most MAX_TRANSFORMERS.
+   */
+  public void setTransformers(int transformers) {
+    this.transformers = Math.max(1, Math.min(MAX_TRANSFORMERS, transformers));
+  }
+
+  /**
+   * Sets how many courses are read from and put into datastore at once, at most MAX_BATCH_SIZE.
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+  }
+
+  /**
+   * Sets how many courses may wait between two stages.
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = Math.max(1, queueCapacity);
+  }
+
+  /**
+   * Caps the requests to the UMD API, over all fetchers together.
+   * @param requestsPerSecond The maximum rate, or 0 for no limit.
+   */
+  public void setRequestsPerSecond(double requestsPerSecond) {
+    this.rateLimiter = new RateLimiter(requestsPerSecond);
+  }
+
+  /**
+   * Sets how long a run may take. Courses written before the deadline stay in datastore.
+   * @param deadlineMillis The time limit, or 0 for no limit.
+   */
+  public void setDeadlineMillis(long deadlineMillis) {
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  /**
+   * Sets whether the sections of all courses are fetched from the bulk listing, a hundred per
+   * request, before any course is fetched. Otherwise every course needs its own request.
+   */
+  public void setBulkSections(boolean bulkSections) {
+    this.sectionsByCourse = bulkSections ? new HashMap<String, JSONArray>() : null;
+  }
+
+  /**
+   * Downloads the catalog and stores the courses that changed. A run is finished when a page has
+   * no courses or after PAGE_LIMIT pages. If a page had no courses, stored courses that no page
+   * listed are removed. The change log of the run is stored even if the run fails, and can
+   * be read with getChanges().
+   * @throws IOException if a page of courses or bulk sections couldn't be fetched.
+   * @throws TimeoutException if the deadline passed first.
+   */
+  public void run() throws IOException, InterruptedException, TimeoutException {
+    deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    boolean complete = false;
+    try {
+      Writer writer = new Writer();
+      if (sectionsByCourse != null) {
+        fetchAllSections();
+      }
+      if (pageFetchers == 1 && sectionFetchers == 1) {
+        runSequentially(writer);
+      } else {
+        runPipelined(writer);
+      }
+      writer.flush();
+      if (endPage.get() <= PAGE_LIMIT) {
+        removeCoursesNotSeen();
+        complete = true;
+      }
+    } finally {
+      changes.finish(complete);
+      datastore.put(changes.toEntity());
+    }
+  }
+
+  /**
+   * Returns the change log of the run, so far if it is still going.
+   */
+  public CatalogChanges getChanges() {
+    return changes;
+  }
+
+  /**
+   * Fetches the bulk listing of sections and groups the sections by course. The pages are
+   * fetched by the page fetchers.
+   */
+  private void fetchAllSections() throws IOException, InterruptedException, TimeoutException {
+    AtomicInteger nextSectionsPage = new AtomicInteger(1);
+    AtomicInteger endSectionsPage = new AtomicInteger(SECTIONS_PAGE_LIMIT + 1);
+    Work fetcher = () -> {
+      int page;
+      while (!isPastDeadline()
+          && (page = nextSectionsPage.getAndIncrement()) < endSectionsPage.get()) {
+        JSONArray sectionsArray = fetchSectionsPage(page);
+        if (sectionsArray == null) {
+          failure = new IOException("Could not fetch page " + page + " of sections.");
+          return;
+        } else if (sectionsArray.size() == 0) {
+          endSectionsPage.accumulateAndGet(page, Math::min);
+          return;
+        }
+        addSections(sectionsArray);
+      }
+    };
+
+    if (pageFetchers == 1) {
+      fetcher.run();
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(pageFetchers, THREAD_FACTORY);
+      AtomicInteger fetchersLeft = new AtomicInteger(pageFetchers);
+      try {
+        for (int i = 0; i < pageFetchers; i++) {
+          executor.execute(() -> runWorker(fetcher, fetchersLeft, null, 0));
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)
+            && failure == null) {
+          checkDeadline();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    checkDeadline();
+    // Without an empty page, the sections of some courses may be missing from the map.
+    if (endSectionsPage.get() > SECTIONS_PAGE_LIMIT) {
+      throw new IOException("The bulk listing of sections has more than "
+          + SECTIONS_PAGE_LIMIT + " pages.");
+    }
+  }
+
+  /**
+   * Adds a page of the bulk listing to the sections of their courses.
+   */
+  private void addSections(JSONArray sectionsArray) {
+    synchronized (sectionsByCourse) {
+      for (Object jsonObject : sectionsArray) {
+        Object courseId = ((JSONObject) jsonObject).get("course");
+        if (courseId instanceof String) {
+          sectionsByCourse.computeIfAbsent(((String) courseId).toUpperCase(), id -> new JSONArray())
+              .add(jsonObject);
+        }
+      }
+    }
+  }
+
+  private void runSequentially(Writer writer)
+      throws IOException, InterruptedException, TimeoutException {
+    for (int page = 1; page <= PAGE_LIMIT; page++) {
+      checkDeadline();
+      JSONArray coursesArray = fetchPage(page);
+      if (coursesArray == null) {
+        throw new IOException("Could not fetch page " + page + " of courses.");
+      } else if (coursesArray.size() == 0) {
+        endPage.set(page);
+        return;
+      }
+      for (CourseItem item : parseCourses(coursesArray)) {
+        checkDeadline();
+        if (fetchSections(item) && transform(item)) {
+          writer.add(item);
+        }
+      }
+    }
+  }
+
+  private void runPipelined(Writer writer)
+      throws IOException, InterruptedException, TimeoutException {
+    BlockingQueue<CourseItem> courses = new ArrayBlockingQueue<CourseItem>(queueCapacity);
+    BlockingQueue<CourseItem> fetched = new ArrayBlockingQueue<CourseItem>(queueCapacity);
+    BlockingQueue<CourseItem> transformed = new ArrayBlockingQueue<CourseItem>(queueCapacity);
+    AtomicInteger pageFetchersLeft = new AtomicInteger(pageFetchers);
+    AtomicInteger sectionFetchersLeft = new AtomicInteger(sectionFetchers);
+    AtomicInteger transformersLeft = new AtomicInteger(transformers);
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(pageFetchers + sectionFetchers + transformers, THREAD_FACTORY);
+    try {
+      for (int i = 0; i < pageFetchers; i++) {
+        executor.execute(() -> runWorker(() -> fetchPages(courses), pageFetchersLeft, courses,
+            sectionFetchers));
+      }
+      for (int i = 0; i < sectionFetchers; i++) {
+        executor.execute(() -> runWorker(() -> {
+          CourseItem item;
+          while ((item = courses.take()) != CourseItem.END) {
+            if (fetchSections(item)) {
+              fetched.put(item);
+            }
+          }
+        }, sectionFetchersLeft, fetched, transformers));
+      }
+      for (int i = 0; i < transformers; i++) {
+        executor.execute(() -> runWorker(() -> {
+          CourseItem item;
+          while ((item = fetched.take()) != CourseItem.END) {
+            if (transform(item)) {
+              transformed.put(item);
+            }
+          }
+        }, transformersLeft, transformed, 1));
+      }
+
+      while (true) {
+        if (failure != null) {
+          throw failure;
+        }
+        checkDeadline();
+        CourseItem item = transformed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (item == CourseItem.END) {
+          break;
+        } else if (item != null) {
+          writer.add(item);
+        }
+      }
+      // A page fetcher may fail after the last course was written.
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetches pages until one is empty, one can't be fetched, or another fetcher found the end.
+   */
+  private void fetchPages(BlockingQueue<CourseItem> courses) throws InterruptedException {
+    int page;
+    while ((page = nextPage.getAndIncrement()) < endPage.get()) {
+      JSONArray coursesArray = fetchPage(page);
+      if (coursesArray == null) {
+        failure = new IOException("Could not fetch page " + page + " of courses.");
+        return;
+      } else if (coursesArray.size() == 0) {
+        endPage.accumulateAndGet(page, Math::min);
+        return;
+      }
+      for (CourseItem item : parseCourses(coursesArray)) {
+        courses.put(item);
+      }
+    }
+  }
+
+  /**
+   * Runs the work of one pipeline thread. Once the last thread of a stage is done, every thread
+   * of the next stage is told to stop. The next queue is null for a stage that is the last one.
+   */
+  private void runWorker(Work work, AtomicInteger workersLeft, BlockingQueue<CourseItem> next,
+      int nextWorkers) {
+    try {
+      work.run();
+      if (workersLeft.decrementAndGet() == 0 && next != null) {
+        for (int i = 0; i < nextWorkers; i++) {
+          next.put(CourseItem.END);
+        }
+      }
+    } catch (InterruptedException e) {
+      // The run is over.
+    } catch (RuntimeException e) {
+      failure = new IOException(e);
+    }
+  }
+
+  private boolean isPastDeadline() {
+    return deadlineMillis > 0 && System.nanoTime() - deadlineNanos > 0;
+  }
+
+  private void checkDeadline() throws TimeoutException {
+    if (isPastDeadline()) {
+      throw new TimeoutException("The catalog couldn't be downloaded before the deadline.");
+    }
+  }
+
+  /**
+   * Returns the courses on a page, or null if they couldn't be fetched.
+   */
+  private JSONArray fetchPage(int page) throws InterruptedException {
+    URI uri;
+    try {
+      URIBuilder builder = new URIBuilder("https://api.umd.io/v1/courses");
+      builder.setParameter("page", Integer.toString(page));
+      uri = builder.build();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+    rateLimiter.acquire();
+    return apiUtil.getJsonArray(uri);
+  }
+
+  /**
+   * Returns a page of the bulk listing of sections, or null if it couldn't be fetched.
+   */
+  private JSONArray fetchSectionsPage(int page) throws InterruptedException {
+    URI uri;
+    try {
+      URIBuilder builder = new URIBuilder("https://api.umd.io/v1/courses/sections");
+      builder.setParameter("page", Integer.toString(page));
+      builder.setParameter("per_page", Integer.toString(SECTIONS_PER_PAGE));
+      uri = builder.build();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+    rateLimiter.acquire();
+    return apiUtil.getJsonArray(uri);
+  }
+
+  /**
+   * Returns the courses of a page that could be parsed. Every listed course id is marked as seen
+   * first, so a course that fails to parse keeps its stored entity instead of being removed.
+   */
+  private List<CourseItem> parseCourses(JSONArray coursesArray) {
+    List<CourseItem> items = new ArrayList<CourseItem>();
+    for (Object jsonObject : coursesArray) {
+      if (jsonObject instanceof JSONObject) {
+        Object courseId = ((JSONObject) jsonObject).get("course_id");
+        if (courseId instanceof String) {
+          seenCourseIds.add(((String) courseId).toUpperCase());
+        }
+      }
+      try {
+        items.add(new CourseItem(new Course((JSONObject) jsonObject)));
+      } catch (ParseException | ClassCastException e) {
+        continue;
+      }
+    }
+    return items;
+  }
+
+  /**
+   * Fetches the sections of a course, or looks them up if they were fetched in bulk. Returns
+   * false if they couldn't be fetched or the course has none.
+   */
+  private boolean fetchSections(CourseItem item) throws InterruptedException {
+    if (sectionsByCourse != null) {
+      // Only read once every page was added.
+      item.sectionsArray = sectionsByCourse.get(item.course.getCourseId());
+      return item.sectionsArray != null;
+    }
+    URI uri;
+    try {
+      uri = new URI("https://api.umd.io/v1/courses/"
+          + URLEncoder.encode(item.course.getCourseId(), StandardCharsets.UTF_8.toString())
+          + "/sections");
+    } catch (URISyntaxException | UnsupportedEncodingException e) {
+      return false;
+    }
+    rateLimiter.acquire();
+    item.sectionsArray = apiUtil.getJsonArray(uri);
+    return item.sectionsArray != null;
+  }
+
+  /**
+   * Removes the stored courses that no page listed in this run. Listed courses whose sections
+   * couldn't be fetched or parsed keep their stored entity.
+   */
+  private void removeCoursesNotSeen() {
+    List<Key> removedKeys = new ArrayList<Key>();
+    for (Entity entity : datastore.prepare(new Query("Course").setKeysOnly()).asIterable()) {
+      String courseId = entity.getKey().getName();
+      if (courseId != null && !seenCourseIds.contains(courseId)) {
+        removedKeys.add(entity.getKey());
+        changes.courseRemoved(courseId);
+      }
+    }
+    for (int i = 0; i < removedKeys.size(); i += MAX_BATCH_SIZE) {
+      datastore.delete(removedKeys.subList(i, Math.min(removedKeys.size(), i + MAX_BATCH_SIZE)));
+    }
+  }
+
+  /**
+   * Returns a hash of the downloaded properties of a course entity. Sections are hashed in the
+   * order of their ids, so a different order from the API doesn't count as a change.
+   */
+  static String getContentHash(Entity courseEntity) {
+    StringBuilder content = new StringBuilder();
+    for (String property : HASHED_PROPERTIES) {
+      Object value = courseEntity.getProperty(property);
+      if (property.equals("sections") && value != null) {
+        List<EmbeddedEntity> sections = new ArrayList<EmbeddedEntity>((List<EmbeddedEntity>) value);
+        sections.sort(Comparator.comparing(section -> (String) section.getProperty("section_id"),
+            Comparator.nullsFirst(Comparator.naturalOrder())));
+        value = sections;
+      }
+      appendContent(content.append(property).append('='), value);
+    }
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    return Base64.getEncoder().encodeToString(
+        digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Appends a property value to the hashed content. Strings are prefixed with their length and
+   * type, so that different values can't produce the same content.
+   */
+  private static void appendContent(StringBuilder content, Object value) {
+    if (value instanceof List) {
+      content.append('[');
+      for (Object item : (List<?>) value) {
+        appendContent(content, item);
+      }
+      content.append(']');
+    } else if (value instanceof EmbeddedEntity) {
+      content.append('{');
+      for (Map.Entry<String, Object> property :
+          new TreeMap<String, Object>(((EmbeddedEntity) value).getProperties()).entrySet()) {
+        appendContent(content.append(property.getKey()).append('='), property.getValue());
+      }
+      content.append('}');
+    } else if (value == null) {
+      content.append("null;");
+    } else {
+      String string = value.toString();
+      content.append(value.getClass().getSimpleName()).append(':').append(string.length())
+          .append(':').append(string).append(';');
+    }
+  }
+
+  /**
+   * Converts the fetched sections of a course into embedded entities. Returns false if the
+   * course has no valid sections. Such courses aren't stored, because the algorithm among other
+   * things would try to use them and fail.
+   */
+  private boolean transform(CourseItem item) {
+    item.sectionEntities = new ArrayList<EmbeddedEntity>();
+    for (Object jsonObject : item.sectionsArray) {
+      Section section;
+      try {
+        section = new Section((JSONObject) jsonObject);
+      } catch (ParseException e) {
+        continue;
+      }
+
+      // Create a Section embedded entity.
+      EmbeddedEntity sectionEntity = new EmbeddedEntity();
+      sectionEntity.setProperty("section_id", section.getSectionId());
+      sectionEntity.setProperty("course_id", section.getCourseId());
+      sectionEntity.setProperty("waitlist", section.getWaitlist());
+      sectionEntity.setProperty("open_seats", section.getOpenSeats());
+      sectionEntity.setProperty("seats", section.getSeats());
+      sectionEntity.setProperty("instructors", Arrays.asList(section.getInstructors()));
+      sectionEntity.setProperty("meetings", toMeetingEntities(section.getMeetings()));
+      item.sectionEntities.add(sectionEntity);
+    }
+    item.sectionsArray = null;
+    return item.sectionEntities.size() > 0;
+  }
+
+  /**
+   * Converts Meeting objects into Meeting embedded entities.
+   */
+  private static ArrayList<EmbeddedEntity> toMeetingEntities(Meeting[] meetings) {
+    ArrayList<EmbeddedEntity> meetingEntities = new ArrayList<EmbeddedEntity>();
+    for (Meeting meeting : meetings) {
+      EmbeddedEntity meetingEntity = new EmbeddedEntity();
+      meetingEntity.setProperty("days", meeting.getDaysAsString());
+      meetingEntity.setProperty("room", meeting.getRoom());
+      meetingEntity.setProperty("building", meeting.getBuilding());
+      meetingEntity.setProperty("start_time", meeting.getStartTime());
+      meetingEntity.setProperty("end_time", meeting.getEndTime());
+      meetingEntities.add(meetingEntity);
+    }
+    return meetingEntities;
+  }
+
+  /**
+   * Collects courses and writes them to datastore in batches. Each batch costs one get, which
+   * finds the courses that are already stored, and one put of the courses whose content hash
+   * changed.
+   */
+  private class Writer {
+    // Keyed by course id, so a course listed twice before a put is only written once.
+    private final LinkedHashMap<String, Course> batch = new LinkedHashMap<String, Course>();
+    private final HashMap<String, ArrayList<EmbeddedEntity>> sections =
+        new HashMap<String, ArrayList<EmbeddedEntity>>();
+
+    void add(CourseItem item) {
+      batch.put(item.course.getCourseId(), item.course);
+      sections.put(item.course.getCourseId(), item.sectionEntities);
+      if (batch.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      // The key name of a course entity is its course id, so existing entities are modified
+      // instead of duplicated.
+      List<Key> keys = new ArrayList<Key>();
+      for (String courseId : batch.keySet()) {
+        keys.add(KeyFactory.createKey("Course", courseId));
+      }
+      Map<Key, Entity> existing = datastore.get(keys);
+
+      List<Entity> courseEntities = new ArrayList<Entity>();
+      int i = 0;
+      for (Course course : batch.values()) {
+        Key key = keys.get(i++);
+        Entity courseEntity = existing.get(key);
+        Object storedHash = null;
+        if (courseEntity == null) {
+          courseEntity = new Entity(key);
+        } else {
+          storedHash = courseEntity.getProperty("content_hash");
+        }
+        courseEntity.setProperty("course_id", course.getCourseId());
+        courseEntity.setProperty("name", course.getName());
+        courseEntity.setProperty("semester", course.getSemester());
+        courseEntity.setProperty("credits", course.getCredits());
+        courseEntity.setProperty("dept_id", course.getDepartmentId());
+        courseEntity.setProperty("description", course.getDescription());
+        courseEntity.setProperty("coreqs", course.getCorequisites());
+        courseEntity.setProperty("prereqs", course.getPrerequisites());
+        courseEntity.setProperty("restrictions", course.getRestrictions());
+        courseEntity.setProperty("additional_info", course.getAdditionalInfo());
+        courseEntity.setProperty("credit_granted_for", course.getCreditGrantedFor());
+        courseEntity.setProperty("section_ids", course.getSectionIds());
+        courseEntity.setProperty("sections", sections.get(course.getCourseId()));
+
+        String hash = getContentHash(courseEntity);
+        if (hash.equals(storedHash)) {
+          changes.courseUnchanged(course.getCourseId());
+          continue;
+        } else if (!existing.containsKey(key)) {
+          changes.courseAdded(course.getCourseId());
+        } else {
+          changes.courseUpdated(course.getCourseId());
+        }
+        courseEntity.setUnindexedProperty("content_hash", hash);
+        courseEntities.add(courseEntity);
+      }
+      if (!courseEntities.isEmpty()) {
+        datastore.put(courseEntities);
+      }
+      batch.clear();
+      sections.clear();
+    }
+  }
+
+  /**
+   * A course on its way through the pipeline.
+   */
+  private static class CourseItem {
+    // Tells the thread that takes it from a queue that its stage is done.
+    static final CourseItem END = new CourseItem(null);
+
+    final Course course;
+    JSONArray sectionsArray;
+    ArrayList<EmbeddedEntity> sectionEntities;
+
+    CourseItem(Course course) {
+      this.course = course;
+    }
+  }
+
+  private interface Work {
+    void run() throws InterruptedException;
+  }
+
+  /**
+   * Spaces out requests evenly so that they stay under a fixed rate.
+   */
+  private static class RateLimiter {
+    private final long intervalNanos;
+    private long nextNanos = System.nanoTime();
+
+    RateLimiter(double perSecond) {
+      intervalNanos = perSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) : 0;
+    }
+
+    void acquire() throws InterruptedException {
+      if (intervalNanos == 0) {
+        return;
+      }
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        if (nextNanos - now < 0) {
+          nextNanos = now;
+        }
+        waitNanos = nextNanos - now;
+        nextNanos += intervalNanos;
+      }
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+}
@@ -16,47 +16,56 @@ package com.google.collegeplanner.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.EmbeddedEntity;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.collegeplanner.data.Course;
-import com.google.collegeplanner.data.Meeting;
-import com.google.collegeplanner.data.Section;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.TimeoutException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.http.client.utils.URIBuilder;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 /** Queries the UMD API and downloads the data to datastore. */
 @WebServlet("/api/download")
 public class DatastoreServlet extends BaseServlet {
   /*
-   * The UMD API only gives back 30 courses max per request. To see more results, we have to
-   * cycle through the "pages". There's about 150 pages, so 200 is a safe maximum for us.
+   * A download normally runs as a background task, which App Engine stops after 10 minutes.
+   * The section requests make up almost all of the time, so they are spread over many threads,
+   * while the rate cap keeps the load on the UMD API reasonable.
    */
-  final int PAGE_LIMIT = 200;
+  static final int DEFAULT_PAGE_FETCHERS = 2;
+  static final int DEFAULT_SECTION_FETCHERS = 16;
+  static final int DEFAULT_TRANSFORMERS = 2;
+  static final double DEFAULT_REQUESTS_PER_SECOND = 40;
+  static final long DEFAULT_DEADLINE_MILLIS = 9 * 60 * 1000;
+  /*
+   * A download runs in the background, so it waits longer than an interactive request before
+   * it gives up on a response or a pooled connection. A call that gives up leaves its course
+   * as it was.
+   */
+  static final int DOWNLOAD_SOCKET_TIMEOUT_MILLIS = 60000;
+  static final int DOWNLOAD_LEASE_TIMEOUT_MILLIS = 60000;
 
   DatastoreService datastore;
+  /*
+   * How the download is spread over threads. Servlets created with a given ApiUtil make one
+   * request at a time, in order, and without a rate cap or deadline. Each setting can be
+   * overridden by a request parameter of the same name.
+   */
+  int pageFetchers = 1;
+  int sectionFetchers = 1;
+  int transformers = 1;
+  double requestsPerSecond = 0;
+  long deadlineMillis = 0;
+  // Whether sections come from the bulk listing instead of one request per course.
+  boolean bulkSections = false;
 
   public DatastoreServlet() {
-    this(DatastoreServiceFactory.getDatastoreService(), new ApiUtil());
+    this(DatastoreServiceFactory.getDatastoreService(),
+        new ApiUtil(ApiUtil.DEFAULT_CONNECT_TIMEOUT_MILLIS, DOWNLOAD_SOCKET_TIMEOUT_MILLIS,
+            DOWNLOAD_LEASE_TIMEOUT_MILLIS));
+    pageFetchers = DEFAULT_PAGE_FETCHERS;
+    sectionFetchers = DEFAULT_SECTION_FETCHERS;
+    transformers = DEFAULT_TRANSFORMERS;
+    requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+    deadlineMillis = DEFAULT_DEADLINE_MILLIS;
   }
 
   public DatastoreServlet(DatastoreService datastore, ApiUtil apiUtil) {
@@ -69,172 +78,63 @@ public class DatastoreServlet extends BaseServlet {
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Loop through the pages.
-    // We don't know how many pages there are beforehand. We stop looping when the new page
-    // doesn't have any results.
-    int page = 1;
-    do {
-      URI uri;
-      try {
-        URIBuilder builder = new URIBuilder("https://api.umd.io/v1/courses");
-        builder.setParameter("page", Integer.toString(page));
-        uri = builder.build();
-      } catch (URISyntaxException e) {
-        respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
-        return;
-      }
-      JSONArray coursesArray = apiUtil.getJsonArray(uri);
-      if (coursesArray == null) {
-        respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
-        return;
-      } else if (coursesArray.size() == 0) {
-        // Successful. The default status code response is 200.
-        return;
-      }
-
-      try {
-        addCourses(coursesArray);
-      } catch (IllegalArgumentException e) {
-        continue;
-      }
-    } while (page++ < PAGE_LIMIT);
-  }
-
-  /**
-   * Creates a Course object from a JSONArray.
-   * @param coursesArray The course json from the UMD API.
-   */
-  private void addCourses(JSONArray coursesArray) throws IllegalArgumentException {
-    if (coursesArray == null) {
-      throw new IllegalArgumentException("Null was passed in as an argument.");
+    CatalogIngester ingester = new CatalogIngester(datastore, apiUtil);
+    try {
+      ingester.setPageFetchers(getIntParameter(request, "page_fetchers", pageFetchers));
+      ingester.setSectionFetchers(getIntParameter(request, "section_fetchers", sectionFetchers));
+      ingester.setTransformers(getIntParameter(request, "transformers", transformers));
+      // A request may change the rate cap and the deadline, but not turn them off.
+      ingester.setRequestsPerSecond(
+          getPositiveParameter(request, "requests_per_second", requestsPerSecond));
+      ingester.setDeadlineMillis((long) (1000
+          * getPositiveParameter(request, "deadline_seconds", deadlineMillis / 1000.0)));
+      ingester.setBulkSections(request != null && request.getParameter("bulk_sections") != null
+          ? Boolean.parseBoolean(request.getParameter("bulk_sections"))
+          : bulkSections);
+    } catch (NumberFormatException e) {
+      respondWithError(HttpServletResponse.SC_BAD_REQUEST, response);
+      return;
     }
 
-    // Loop through each page's courses.
-    for (Object jsonObject : coursesArray) {
-      JSONObject courseJson = (JSONObject) jsonObject;
-
-      // Create a Course object from the JSONObject for parsing.
-      Course course;
-      try {
-        course = new Course(courseJson);
-      } catch (ParseException e) {
-        continue;
-      }
-
-      // Check if the entity already exists in datastore, and modify it if it does.
-      Query query = new Query("Course").setFilter(
-          new FilterPredicate("course_id", FilterOperator.EQUAL, course.getCourseId()));
-      PreparedQuery preparedQuery = datastore.prepare(query);
-      List<Entity> limitedResults = preparedQuery.asList(FetchOptions.Builder.withLimit(1));
-      Entity courseEntity;
-      if (limitedResults.size() == 0) {
-        // The entity doesn't exist - create a new one.
-        courseEntity = new Entity("Course", course.getCourseId());
-      } else {
-        // The entity already exists - modify it instead.
-        courseEntity = limitedResults.get(0);
-      }
-
-      URI uri;
-      try {
-        uri = new URI("https://api.umd.io/v1/courses/"
-            + URLEncoder.encode(course.getCourseId(), StandardCharsets.UTF_8.toString())
-            + "/sections");
-      } catch (URISyntaxException | UnsupportedEncodingException e) {
-        continue;
-      }
-      JSONArray sectionsArray = apiUtil.getJsonArray(uri);
-      if (sectionsArray == null) {
-        continue;
+    try {
+      ingester.run();
+    } catch (TimeoutException e) {
+      respondWithError(e.getMessage(), HttpServletResponse.SC_SERVICE_UNAVAILABLE, response);
+    } catch (IOException e) {
+      respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
+    } finally {
+      // The default status code response is 200. Schedules computed from the old course data are
+      // out of date if any course changed, even in a failed run.
+      if (ingester.getChanges().hasChanges()) {
+        SchedulerServlet.invalidateCache();
       }
-      addSectionsToCourse(sectionsArray, course, courseEntity);
     }
   }
 
-  /**
-   * Adds the Course, Sections, and Meetings to datastore.
-   * @param sectionsArray The section json from the UMD API.
-   * @param course The Course object.
-   * @param courseEntity The Entity object that we want to add to datastore.
-   */
-  private void addSectionsToCourse(JSONArray sectionsArray, Course course, Entity courseEntity)
-      throws IllegalArgumentException {
-    if (course == null || courseEntity == null) {
-      throw new IllegalArgumentException("Null was passed in as an argument.");
-    }
-
-    // Loop through each course's sections.
-    ArrayList<EmbeddedEntity> sectionEntities = new ArrayList<EmbeddedEntity>();
-    for (Object jsonObject : sectionsArray) {
-      JSONObject sectionJson = (JSONObject) jsonObject;
-      Section section;
-      try {
-        section = new Section(sectionJson);
-      } catch (ParseException e) {
-        continue;
-      }
-
-      // Create a Section embedded entity.
-      EmbeddedEntity sectionEntity = new EmbeddedEntity();
-      sectionEntity.setProperty("section_id", section.getSectionId());
-      sectionEntity.setProperty("course_id", section.getCourseId());
-      sectionEntity.setProperty("waitlist", section.getWaitlist());
-      sectionEntity.setProperty("open_seats", section.getOpenSeats());
-      sectionEntity.setProperty("seats", section.getSeats());
-      sectionEntity.setProperty("instructors", Arrays.asList(section.getInstructors()));
-
-      // Convert Meetings to Meeting embedded entities.
-      ArrayList<EmbeddedEntity> meetingEntities = new ArrayList<EmbeddedEntity>();
-      addToMeetingEntities(meetingEntities, section.getMeetings());
-
-      // Add the Meeting embedded entities to the Section entity.
-      sectionEntity.setProperty("meetings", meetingEntities);
-      // Add this section entity to the list of all section entities.
-      sectionEntities.add(sectionEntity);
-    }
-
-    if (sectionEntities.size() == 0) {
-      // If the course has no sections, then we shouldn't add it to datastore because the algorithm
-      // among other things will try to use it an fail.
-      return;
-    }
-
-    courseEntity.setProperty("course_id", course.getCourseId());
-    courseEntity.setProperty("name", course.getName());
-    courseEntity.setProperty("semester", course.getSemester());
-    courseEntity.setProperty("credits", course.getCredits());
-    courseEntity.setProperty("dept_id", course.getDepartmentId());
-    courseEntity.setProperty("description", course.getDescription());
-    courseEntity.setProperty("coreqs", course.getCorequisites());
-    courseEntity.setProperty("prereqs", course.getPrerequisites());
-    courseEntity.setProperty("restrictions", course.getRestrictions());
-    courseEntity.setProperty("additional_info", course.getAdditionalInfo());
-    courseEntity.setProperty("credit_granted_for", course.getCreditGrantedFor());
-    courseEntity.setProperty("section_ids", course.getSectionIds());
-    courseEntity.setProperty("sections", sectionEntities);
-
-    datastore.put(courseEntity);
+  private static int getIntParameter(HttpServletRequest request, String name, int defaultValue)
+      throws NumberFormatException {
+    String value = request == null ? null : request.getParameter(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
   }
 
   /**
-   * Converts Meeting objects into Meeting entities and then adds them to the meetingEntities array.
-   * @param meetingEntities The ArrayList of Meeting entities.
-   * @param meetings The Array of Meeting objects.
+   * Returns the value of a request parameter that has to be positive, or the default value if
+   * the request doesn't have it.
+   * @throws NumberFormatException if the value isn't a positive, finite number.
    */
-  private void addToMeetingEntities(ArrayList<EmbeddedEntity> meetingEntities, Meeting[] meetings)
-      throws IllegalArgumentException {
-    if (meetingEntities == null || meetings == null) {
-      throw new IllegalArgumentException("Null was passed in as an argument.");
+  private static double getPositiveParameter(HttpServletRequest request, String name,
+      double defaultValue) throws NumberFormatException {
+    String value = request == null ? null : request.getParameter(name);
+    if (value == null) {
+      return defaultValue;
     }
-
-    for (Meeting meeting : meetings) {
-      EmbeddedEntity meetingEntity = new EmbeddedEntity();
-      meetingEntity.setProperty("days", meeting.getDaysAsString());
-      meetingEntity.setProperty("room", meeting.getRoom());
-      meetingEntity.setProperty("building", meeting.getBuilding());
-      meetingEntity.setProperty("start_time", meeting.getStartTime());
-      meetingEntity.setProperty("end_time", meeting.getEndTime());
-      meetingEntities.add(meetingEntity);
+    double number = Double.parseDouble(value);
+    if (!(number > 0) || Double.isInfinite(number)) {
+      throw new NumberFormatException(name + " has to be positive.");
     }
+    return number;
   }
 }
@@ -0,0 +1,151 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.servlets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache of computed results that evicts the least recently used entries once the total
+ * weight of its entries is over the limit. Entries also expire after a fixed time.
+ *
+ * If several threads miss on the same key at the same time, only the first one computes the
+ * value and the others wait for its result instead of repeating the work.
+ */
+public class ResultCache<K, V> {
+  private final long maxWeight;
+  private final long timeToLiveMillis;
+  private final ToLongFunction<V> weigher;
+  // Entries in access order, so the first entry is the least recently used one.
+  private final LinkedHashMap<K, Entry<V>> entries =
+      new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight =
+      new ConcurrentHashMap<K, CompletableFuture<V>>();
+  private long weight;
+
+  /**
+   * @param maxWeight The total weight the cached entries may have.
+   * @param timeToLiveMillis How long an entry stays valid after it was computed.
+   * @param weigher Returns the weight of a value, for example its size in bytes.
+   */
+  public ResultCache(long maxWeight, long timeToLiveMillis, ToLongFunction<V> weigher) {
+    this.maxWeight = maxWeight;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.weigher = weigher;
+  }
+
+  /**
+   * Returns the cached value for the key, or computes it with the loader if there is none.
+   * @param key The key of the value.
+   * @param loader Computes the value. If it throws, every thread waiting for it gets the same
+   *     exception and nothing is cached.
+   * @param cacheable Returns false for values that should be returned but not kept.
+   */
+  public V get(K key, Callable<V> loader, Predicate<V> cacheable) throws Exception {
+    V cached = getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    CompletableFuture<V> future = new CompletableFuture<V>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      try {
+        return existing.get();
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      }
+    }
+
+    try {
+      // Another thread may have finished computing the value right before this one started.
+      V value = getIfPresent(key);
+      if (value != null) {
+        future.complete(value);
+        return value;
+      }
+      value = loader.call();
+      if (cacheable.test(value)) {
+        put(key, value);
+      }
+      future.complete(value);
+      return value;
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key);
+    }
+  }
+
+  private synchronized V getIfPresent(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - entry.createdMillis > timeToLiveMillis) {
+      entries.remove(key);
+      weight -= entry.weight;
+      return null;
+    }
+    return entry.value;
+  }
+
+  private synchronized void put(K key, V value) {
+    long valueWeight = weigher.applyAsLong(value);
+    if (valueWeight > maxWeight) {
+      return;
+    }
+    Entry<V> previous = entries.put(key, new Entry<V>(value, valueWeight));
+    weight += valueWeight - (previous == null ? 0 : previous.weight);
+
+    Iterator<Map.Entry<K, Entry<V>>> leastRecent = entries.entrySet().iterator();
+    while (weight > maxWeight) {
+      weight -= leastRecent.next().getValue().weight;
+      leastRecent.remove();
+    }
+  }
+
+  /**
+   * Removes every entry.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private static class Entry<V> {
+    final V value;
+    final long weight;
+    final long createdMillis;
+
+    Entry(V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+      createdMillis = System.currentTimeMillis();
+    }
+  }
+}
@@ -14,9 +14,18 @@
 
 package com.google.collegeplanner.servlets;
 
+import com.google.collegeplanner.data.Meeting;
+import com.google.collegeplanner.data.ParallelSemesterScheduler;
+import com.google.collegeplanner.data.SatScheduler;
 import com.google.collegeplanner.data.Schedule;
+import com.google.collegeplanner.data.ScheduleCounter;
+import com.google.collegeplanner.data.ScheduleEngine;
+import com.google.collegeplanner.data.ScheduleIterator;
+import com.google.collegeplanner.data.SchedulePreferences;
+import com.google.collegeplanner.data.SearchLimit;
 import com.google.collegeplanner.data.Section;
 import com.google.collegeplanner.data.SemesterScheduler;
+import com.google.collegeplanner.data.TimeMask;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.net.URI;
@@ -24,6 +33,11 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -35,11 +49,57 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-/** Servlet that returns a list of possible schedules containing the given courses.*/
+/**
+ * Servlet that returns a list of possible schedules containing the given courses. Results are
+ * paginated: the response contains a "next" cursor that can be sent back as "cursor" to get the
+ * schedules that follow. The first page also contains the total number of schedules as "count".
+ * If the search had to stop early, "truncated" is true and the schedules are the ones found so
+ * far. The body can block out times of the week as "blockedTimes", a list of objects in the
+ * same format as the meetings of a section, e.g. {"days": "MWF", "start_time": "9:00am",
+ * "end_time": "12:00pm"}. No schedule contains a section during a blocked time. With "diverse"
+ * set to true, the response holds schedules that differ from each other as much as possible
+ * instead of the first ones in search order, and isn't paginated. With "openSeatsOnly" set to
+ * true, full sections are left out and sections with more open seats are tried first. Full
+ * sections whose waitlist is at most "maxWaitlist" long are still allowed, after the open ones.
+ * "corequisites" lists groups of selected course ids, like [["CHEM131", "CHEM132"]], whose
+ * sections are scheduled together as bundles that don't conflict internally.
+ *
+ * Responses are cached, so popular combinations of courses are only fetched and searched once
+ * every few minutes. Identical requests that arrive while one is being computed wait for it.
+ */
 @WebServlet("/api/scheduler")
 public class SchedulerServlet extends BaseServlet {
-  private ArrayList<String> courseList;
-  private ArrayList<ArrayList<Section>> courses;
+  /*
+   * Requests with at least this many candidate sections in total are searched in parallel. Below
+   * it, the cost of splitting up the search outweighs the gain.
+   */
+  final int PARALLEL_SECTION_THRESHOLD = 100;
+  /*
+   * The number of schedules returned per request. This matches the number of schedules the
+   * schedulers find on their own.
+   */
+  final int PAGE_SIZE = 15;
+  /*
+   * A search that runs longer than this, or visits more nodes, returns what it found so far with
+   * "truncated" set. This keeps well clear of the App Engine request deadline.
+   */
+  final long SEARCH_TIMEOUT_MILLIS = 10000;
+  final long MAX_SEARCH_STEPS = 50000000;
+  final long DIVERSITY_SEED = 0;
+  /*
+   * Responses are cached by their canonical request for a few minutes, since seat counts change
+   * over time. An entry weighs as much as the number of schedules in it, and the cache holds at
+   * most this many schedules in total.
+   */
+  static final long CACHE_MAX_SCHEDULES = 200000;
+  static final long CACHE_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000;
+
+  // Shared by every instance of the servlet. Keys start with the catalog version, so bumping the
+  // version makes every older entry unreachable until it is evicted.
+  private static final ResultCache<String, JSONObject> cache =
+      new ResultCache<String, JSONObject>(CACHE_MAX_SCHEDULES, CACHE_TIME_TO_LIVE_MILLIS,
+          json -> ((JSONArray) json.get("schedules")).size() + 1);
+  private static final AtomicLong catalogVersion = new AtomicLong();
 
   /**
    * Organizes courses from POST request into a given number of semesters
@@ -47,81 +107,343 @@ public class SchedulerServlet extends BaseServlet {
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     JSONObject body;
-    JSONArray selectedClasses;
+    ArrayList<String> courseIds = new ArrayList<String>();
+    boolean mostConstrainedFirst;
+    boolean diverse;
+    boolean openSeatsOnly;
+    boolean satEngine;
+    int maxWaitlist = -1;
+    JSONArray corequisites = null;
+    String cursor;
+    SchedulePreferences preferences = null;
+    TimeMask blocked = null;
     try {
       body = getPostRequestBody(request);
-      selectedClasses = (JSONArray) body.get("selectedClasses");
-    } catch (NumberFormatException | ClassCastException | ParseException | NullPointerException e) {
+      for (Object obj : (JSONArray) body.get("selectedClasses")) {
+        courseIds.add((String) obj);
+      }
+      mostConstrainedFirst = Boolean.TRUE.equals((Boolean) body.get("mostConstrainedFirst"));
+      diverse = Boolean.TRUE.equals((Boolean) body.get("diverse"));
+      openSeatsOnly = Boolean.TRUE.equals((Boolean) body.get("openSeatsOnly"));
+      satEngine = isSatEngine((String) body.get("engine"));
+      if (body.get("maxWaitlist") != null) {
+        maxWaitlist = ((Long) body.get("maxWaitlist")).intValue();
+      }
+      corequisites = (JSONArray) body.get("corequisites");
+      cursor = (String) body.get("cursor");
+      if (body.get("preferences") != null) {
+        preferences = new SchedulePreferences((JSONObject) body.get("preferences"));
+      }
+      if (body.get("blockedTimes") != null) {
+        blocked = parseBlockedTimes((JSONArray) body.get("blockedTimes"));
+      }
+    } catch (NumberFormatException | ClassCastException | ParseException | NullPointerException
+        | java.text.ParseException e) {
       respondWithError(
           "Invalid body for POST request.", HttpServletResponse.SC_BAD_REQUEST, response);
       return;
     }
 
-    if (!prepareLists(selectedClasses, response)) {
+    // The search order follows the order of the courses, so sorting them makes the result only
+    // depend on which courses were selected.
+    Collections.sort(courseIds);
+    List<List<Integer>> corequisiteGroups;
+    try {
+      corequisiteGroups = getCorequisiteGroups(corequisites, courseIds);
+    } catch (ClassCastException | IllegalArgumentException e) {
+      respondWithError(
+          "Invalid body for POST request.", HttpServletResponse.SC_BAD_REQUEST, response);
       return;
     }
+    // Malformed cursors are rejected before any course is fetched. Whether a cursor belongs to
+    // the selected courses can only be told once their sections are loaded.
+    if (cursor != null) {
+      try {
+        if (satEngine) {
+          SatScheduler.checkCursor(cursor);
+        } else {
+          SemesterScheduler.checkCursor(cursor);
+        }
+      } catch (IllegalArgumentException e) {
+        respondWithError("Invalid cursor.", HttpServletResponse.SC_BAD_REQUEST, response);
+        return;
+      }
+    }
+    String cacheKey = String.join("|", catalogVersion.get() + "", String.join(",", courseIds),
+        mostConstrainedFirst + "", diverse + "", openSeatsOnly + ":" + maxWaitlist, satEngine + "",
+        corequisiteGroups.toString(), String.valueOf(cursor),
+        preferences == null ? "" : preferences.toString(), String.valueOf(blocked));
 
-    JSONObject schedules = getSchedules();
+    final SchedulePreferences finalPreferences = preferences;
+    final TimeMask finalBlocked = blocked;
+    final int finalMaxWaitlist = maxWaitlist;
+    JSONObject json;
+    try {
+      // Truncated results are returned but not cached, a later request may have more time.
+      json = cache.get(cacheKey, () -> {
+        ArrayList<ArrayList<Section>> courses = prepareLists(courseIds);
+        if (finalBlocked != null) {
+          courses = SemesterScheduler.removeBlockedSections(courses, finalBlocked);
+        }
+        if (openSeatsOnly) {
+          courses = SemesterScheduler.removeFullSections(courses, finalMaxWaitlist);
+        }
+        if (!corequisiteGroups.isEmpty()) {
+          courses = SemesterScheduler.bundleCorequisites(courses, corequisiteGroups);
+        }
+        if (finalPreferences != null) {
+          return getBestSchedules(courses, mostConstrainedFirst, satEngine, finalPreferences);
+        } else if (diverse) {
+          return getDiverseSchedules(courses);
+        } else {
+          return getSchedules(courses, mostConstrainedFirst, satEngine, cursor);
+        }
+      }, result -> !Boolean.TRUE.equals(result.get("truncated")));
+    } catch (InvalidCursorException e) {
+      respondWithError("Invalid cursor.", HttpServletResponse.SC_BAD_REQUEST, response);
+      return;
+    } catch (Exception e) {
+      respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
+      return;
+    }
     response.setContentType("application/json;");
-    response.getWriter().println(new Gson().toJson(schedules));
+    response.getWriter().println(new Gson().toJson(json));
+  }
+
+  /**
+   * Makes every cached response unreachable. Called whenever the stored course data changes.
+   */
+  public static void invalidateCache() {
+    catalogVersion.incrementAndGet();
   }
 
   /**
-   * This method loads the courses and courseList ArrayLists with correct
-   * information. courses is loaded with the lists of sections for each
-   * course while courseList is loaded with the courseID's of the selected
-   * courses. Returns true if lists were prepared correctly, false otherwise.
-   * @param classes The JSONArray of courseIds of the selected classes
-   * @param response The HttpServletResponse object
-   */
-  private boolean prepareLists(JSONArray classes, HttpServletResponse response) throws IOException {
-    String courseId;
+   * Returns the groups of corequisite courses as indices into the list of course ids.
+   * @param corequisites The JSONArray of groups of course ids, or null if there are none.
+   * @param courseIds The sorted course ids of the selected classes.
+   * @throws IllegalArgumentException if a group contains a course that wasn't selected or a
+   *     course is in more than one group.
+   */
+  private List<List<Integer>> getCorequisiteGroups(JSONArray corequisites,
+      ArrayList<String> courseIds) throws IllegalArgumentException {
+    List<List<Integer>> groups = new ArrayList<List<Integer>>();
+    if (corequisites == null) {
+      return groups;
+    }
+    boolean[] grouped = new boolean[courseIds.size()];
+    for (Object groupObj : corequisites) {
+      List<Integer> group = new ArrayList<Integer>();
+      for (Object courseId : (JSONArray) groupObj) {
+        int index = Collections.binarySearch(courseIds, (String) courseId);
+        if (index < 0 || grouped[index]) {
+          throw new IllegalArgumentException("Corequisite course is not selected or repeated.");
+        }
+        grouped[index] = true;
+        group.add(index);
+      }
+      Collections.sort(group);
+      groups.add(group);
+    }
+    // Sorting the groups too makes equal requests produce equal cache keys.
+    groups.sort(Comparator.comparing(List::toString));
+    return groups;
+  }
+
+  /**
+   * Returns the time covered by the given list of blocked times.
+   * @param blockedTimes The JSONArray of blocked times, each in the format of a meeting.
+   */
+  private TimeMask parseBlockedTimes(JSONArray blockedTimes) throws java.text.ParseException {
+    TimeMask blocked = new TimeMask();
+    for (Object obj : blockedTimes) {
+      blocked.or(new Meeting((JSONObject) obj).getTimeMask());
+    }
+    return blocked;
+  }
+
+  /**
+   * Returns the lists of sections of the given courses, in the same order.
+   * @param courseIds The courseIds of the selected classes
+   * @throws IOException if the sections of a course couldn't be fetched
+   */
+  private ArrayList<ArrayList<Section>> prepareLists(ArrayList<String> courseIds)
+      throws IOException {
     URI uri;
     JSONArray jsonArray;
     ApiUtil apiUtil = new ApiUtil();
 
-    courseList = new ArrayList<String>();
-    courses = new ArrayList<ArrayList<Section>>();
-    for (Object obj : classes) {
-      courseId = (String) obj;
-      courseList.add(courseId);
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    for (String courseId : courseIds) {
       try {
         uri = new URI("https://api.umd.io/v1/courses/"
             + URLEncoder.encode(courseId, StandardCharsets.UTF_8.toString()) + "/sections");
       } catch (URISyntaxException e) {
-        respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
-        return false;
+        throw new IOException(e);
       }
 
       jsonArray = apiUtil.getJsonArray(uri);
       if (jsonArray == null) {
-        respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
-        return false;
+        throw new IOException("Could not fetch the sections of " + courseId);
       }
       courses.add(convertSectionJsonToSectionArrayList(jsonArray));
     }
-    return true;
+    return courses;
   }
 
   /**
-   * Returns a JSONArray representing the schedules the
-   * SemesterScheduler returns.
+   * Returns a JSONObject with a page of the schedules the SemesterScheduler finds, and a cursor
+   * for the next page if there may be more schedules.
+   * @param courses The candidate sections of every course
+   * @param mostConstrainedFirst Whether the courses with the fewest sections are scheduled first
+   * @param satEngine Whether the SAT engine searches instead of backtracking
+   * @param cursor The cursor returned with the previous page, or null for the first page
+   * @throws InvalidCursorException if the cursor doesn't belong to the selected courses
    */
-  private JSONObject getSchedules() {
+  private JSONObject getSchedules(ArrayList<ArrayList<Section>> courses,
+      boolean mostConstrainedFirst, boolean satEngine, String cursor)
+      throws InvalidCursorException {
     JSONObject json = new JSONObject();
     JSONArray schedulesJson = new JSONArray();
-    SemesterScheduler scheduler = new SemesterScheduler(courses);
-    ArrayList<Schedule> possibleSchedules = scheduler.getPossibleSchedules();
+    int sectionCount = 0;
+    for (ArrayList<Section> course : courses) {
+      sectionCount += course.size();
+    }
+
+    String nextCursor = null;
+    boolean truncated;
+    SearchLimit limit = createSearchLimit();
+    ScheduleEngine engine = null;
+    if (satEngine) {
+      SatScheduler scheduler = new SatScheduler(courses);
+      try {
+        scheduler.setCursor(cursor);
+      } catch (IllegalArgumentException e) {
+        throw new InvalidCursorException();
+      }
+      engine = scheduler;
+    } else if (cursor == null && sectionCount >= PARALLEL_SECTION_THRESHOLD) {
+      ParallelSemesterScheduler scheduler = new ParallelSemesterScheduler(courses);
+      scheduler.setMostConstrainedFirst(mostConstrainedFirst);
+      engine = scheduler;
+    }
 
-    for (Schedule schedule : possibleSchedules) {
+    if (engine != null) {
+      engine.setSearchLimit(limit);
+      for (Schedule schedule : engine.getPossibleSchedules()) {
+        schedulesJson.add(schedule.toJSON());
+      }
+      nextCursor = engine.getNextCursor();
+      truncated = engine.isTruncated();
+    } else {
+      // Schedules are only needed as JSON, so they are never turned into Schedule objects.
+      SemesterScheduler scheduler = new SemesterScheduler(courses);
+      scheduler.setMostConstrainedFirst(mostConstrainedFirst);
+      scheduler.setSearchLimit(limit);
+      ScheduleIterator iterator;
+      try {
+        iterator = scheduler.iterator(cursor);
+      } catch (IllegalArgumentException e) {
+        throw new InvalidCursorException();
+      }
+      while (schedulesJson.size() < PAGE_SIZE && iterator.hasNext()) {
+        schedulesJson.add(iterator.nextIndexed().toJSON());
+      }
+      truncated = iterator.isTruncated();
+      // A truncated page can still be continued from where its search stopped.
+      if (schedulesJson.size() == PAGE_SIZE || truncated) {
+        nextCursor = iterator.getCursor();
+      }
+    }
+
+    json.put("schedules", schedulesJson);
+    json.put("next", nextCursor);
+    json.put("truncated", truncated);
+    if (cursor == null) {
+      json.put("count", new ScheduleCounter(courses).count().toJSON());
+    }
+
+    return json;
+  }
+
+  /**
+   * Returns a JSONObject with the schedules that best match the given preferences, from best to
+   * worst. Ranked results are not paginated.
+   * @param courses The candidate sections of every course
+   * @param mostConstrainedFirst Whether the courses with the fewest sections are scheduled first
+   * @param satEngine Whether the SAT engine searches instead of backtracking
+   * @param preferences How much each property of a schedule is penalized
+   */
+  private JSONObject getBestSchedules(ArrayList<ArrayList<Section>> courses,
+      boolean mostConstrainedFirst, boolean satEngine, SchedulePreferences preferences) {
+    JSONObject json = new JSONObject();
+    JSONArray schedulesJson = new JSONArray();
+    ArrayList<Schedule> schedules;
+    boolean truncated;
+    if (satEngine) {
+      SatScheduler scheduler = new SatScheduler(courses);
+      scheduler.setSearchLimit(createSearchLimit());
+      schedules = scheduler.getBestSchedules(preferences);
+      truncated = scheduler.isTruncated();
+    } else {
+      SemesterScheduler scheduler = new SemesterScheduler(courses);
+      scheduler.setMostConstrainedFirst(mostConstrainedFirst);
+      scheduler.setSearchLimit(createSearchLimit());
+      schedules = scheduler.getBestSchedules(preferences);
+      truncated = scheduler.isTruncated();
+    }
+    for (Schedule schedule : schedules) {
       schedulesJson.add(schedule.toJSON());
     }
 
     json.put("schedules", schedulesJson);
+    json.put("truncated", truncated);
+    return json;
+  }
+
+  /**
+   * Returns true if the request asks for the SAT engine. It is opt-in: on every catalog it was
+   * measured on, the backtracking search was faster. Later pages have to ask for the same engine
+   * as the first one, since their cursors only fit that engine.
+   * @param engine "sat" for the SAT engine, or null or "search" for backtracking
+   * @throws java.text.ParseException if the engine is unknown
+   */
+  private boolean isSatEngine(String engine) throws java.text.ParseException {
+    if (engine == null || engine.equals("search")) {
+      return false;
+    } else if (engine.equals("sat")) {
+      return true;
+    }
+    throw new java.text.ParseException("Unknown engine " + engine + ".", 0);
+  }
 
+  /**
+   * Returns a JSONObject with schedules that differ from each other as much as possible. The
+   * sampling is seeded, so the same courses always give the same schedules.
+   * @param courses The candidate sections of every course
+   */
+  private JSONObject getDiverseSchedules(ArrayList<ArrayList<Section>> courses) {
+    JSONObject json = new JSONObject();
+    JSONArray schedulesJson = new JSONArray();
+    SemesterScheduler scheduler = new SemesterScheduler(courses);
+    scheduler.setSearchLimit(createSearchLimit());
+    for (Schedule schedule : scheduler.getDiverseSchedules(new Random(DIVERSITY_SEED))) {
+      schedulesJson.add(schedule.toJSON());
+    }
+
+    json.put("schedules", schedulesJson);
+    json.put("truncated", scheduler.isTruncated());
     return json;
   }
 
+  /**
+   * Returns the limit for a search made for the current request. Neither the servlet API nor
+   * App Engine tells a request that its client disconnected, so the time and node bounds are
+   * what keep an abandoned search from running on.
+   */
+  private SearchLimit createSearchLimit() {
+    return new SearchLimit(SEARCH_TIMEOUT_MILLIS, MAX_SEARCH_STEPS);
+  }
+
   /**
    * Converts a given JSONArray of sections into an ArrayList of
    * sections.
@@ -139,4 +461,12 @@ public class SchedulerServlet extends BaseServlet {
     }
     return list;
   }
+
+  /**
+   * Thrown when a well-formed cursor doesn't belong to the courses of the request, so that it
+   * can be told apart from other failures of the search.
+   */
+  private static class InvalidCursorException extends Exception {
+    private static final long serialVersionUID = 1L;
+  }
 }
@@ -16,40 +16,45 @@ package com.google.collegeplanner.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.EmbeddedEntity;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.collegeplanner.data.Course;
+import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.collegeplanner.data.Section;
+import com.google.collegeplanner.data.SectionCatalog;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /** Servlet that returns list of course sections.*/
 @WebServlet("/api/sections")
 public class SectionServlet extends BaseServlet {
+  // Shared by the instances the container creates, so every process holds the catalog once.
+  private static final CachedCatalog sharedCatalog = new CachedCatalog();
+
   DatastoreService datastore;
+  private final CachedCatalog catalog;
+
   public SectionServlet() {
-    this(DatastoreServiceFactory.getDatastoreService());
+    this(DatastoreServiceFactory.getDatastoreService(), sharedCatalog);
   }
 
   public SectionServlet(DatastoreService datastore) {
+    this(datastore, new CachedCatalog());
+  }
+
+  private SectionServlet(DatastoreService datastore, CachedCatalog catalog) {
     this.datastore = datastore;
+    this.catalog = catalog;
   }
 
   /**
@@ -70,33 +75,20 @@ public class SectionServlet extends BaseServlet {
       return;
     }
 
-    Query query = new Query("Course").setFilter(
-        new FilterPredicate("course_id", FilterOperator.EQUAL, courseId));
-    PreparedQuery preparedQuery = datastore.prepare(query);
-    List<Entity> results = preparedQuery.asList(FetchOptions.Builder.withDefaults());
-
-    if (results.size() == 0) {
+    SectionCatalog sectionCatalog = catalog.get(datastore);
+    if (sectionCatalog.isUnreadable(courseId)) {
+      respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
+      return;
+    }
+    if (sectionCatalog.findCourse(courseId) < 0) {
       respondWithError(HttpServletResponse.SC_NOT_FOUND, response);
       return;
     }
 
-    // Convert Section entities to Section objects to serialize into json.
     ArrayList<Section> sections = new ArrayList<Section>();
-    Entity courseEntity = results.get(0);
-    ArrayList<EmbeddedEntity> sectionEntities =
-        (ArrayList<EmbeddedEntity>) courseEntity.getProperty("sections");
-    for (EmbeddedEntity sectionEntity : sectionEntities) {
-      String section_id = (String) sectionEntity.getProperty("section_id");
-      if (section_id.equals(sectionId)) {
-        Section section;
-        try {
-          section = new Section(sectionEntity);
-        } catch (ParseException e) {
-          respondWithError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
-          return;
-        }
-        sections.add(section);
-      }
+    int index = sectionCatalog.findSection(courseId, sectionId);
+    if (index >= 0) {
+      sections.add(sectionCatalog.getSection(index));
     }
 
     JSONObject sectionsInfo = new JSONObject();
@@ -106,4 +98,38 @@ public class SectionServlet extends BaseServlet {
     Gson gson = new GsonBuilder().serializeNulls().create();
     response.getWriter().println(gson.toJson(sectionsInfo));
   }
+
+  /**
+   * Holds the catalog of every stored course. Every download stores a CatalogSync entity when it
+   * ends, so the catalog is built again once a newer one shows up, no matter which instance ran
+   * the download.
+   */
+  private static class CachedCatalog {
+    private volatile SectionCatalog catalog;
+    // The newest CatalogSync when the catalog was built, or null if there was none.
+    private volatile Key syncKey;
+
+    SectionCatalog get(DatastoreService datastore) {
+      Key latest = getLatestSync(datastore);
+      if (catalog == null || !Objects.equals(latest, syncKey)) {
+        synchronized (this) {
+          if (catalog == null || !Objects.equals(latest, syncKey)) {
+            // The sync is read before the courses, so a download that ends while they are read
+            // makes the next request build the catalog again.
+            catalog = SectionCatalog.fromEntities(
+                datastore.prepare(new Query("Course")).asIterable());
+            syncKey = latest;
+          }
+        }
+      }
+      return catalog;
+    }
+
+    private static Key getLatestSync(DatastoreService datastore) {
+      Query query =
+          new Query("CatalogSync").addSort("finished", SortDirection.DESCENDING).setKeysOnly();
+      List<Entity> syncs = datastore.prepare(query).asList(FetchOptions.Builder.withLimit(1));
+      return syncs.isEmpty() ? null : syncs.get(0).getKey();
+    }
+  }
 }
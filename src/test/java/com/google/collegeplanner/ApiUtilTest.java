@@ -0,0 +1,126 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.servlets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests ApiUtil against a local server */
+@RunWith(JUnit4.class)
+public final class ApiUtilTest {
+  HttpServer server;
+  ExecutorService executor;
+  // Handlers of /blocked wait for this before they respond.
+  CountDownLatch release;
+  // Released once for every request that reaches /blocked.
+  Semaphore arrivals;
+  AtomicInteger requests;
+
+  @Before
+  public void before() throws Exception {
+    executor = Executors.newCachedThreadPool();
+    release = new CountDownLatch(1);
+    arrivals = new Semaphore(0);
+    requests = new AtomicInteger();
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/slow", exchange -> {
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(exchange, "[1]");
+    });
+    server.createContext("/blocked", exchange -> {
+      requests.incrementAndGet();
+      arrivals.release();
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(exchange, "[]");
+    });
+    server.start();
+  }
+
+  @After
+  public void after() {
+    release.countDown();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void socketTimeoutIsAppliedPerInstance() throws Exception {
+    URI uri = getUri("/slow");
+
+    Assert.assertEquals("", new ApiUtil(5000, 100, 5000).requestApi(uri));
+    Assert.assertEquals("[1]", new ApiUtil(5000, 5000, 5000).requestApi(uri));
+  }
+
+  @Test
+  public void failedLeaseReturnsEmptyString() throws Exception {
+    URI uri = getUri("/blocked");
+    ApiUtil patient = new ApiUtil(5000, 30000, 30000);
+    ArrayList<Future<String>> holders = new ArrayList<Future<String>>();
+    for (int i = 0; i < ApiUtil.MAX_CONNECTIONS_PER_HOST; i++) {
+      holders.add(executor.submit(() -> patient.requestApi(uri)));
+    }
+    Assert.assertTrue(
+        arrivals.tryAcquire(ApiUtil.MAX_CONNECTIONS_PER_HOST, 30, TimeUnit.SECONDS));
+
+    // Every connection to the host is in use, so this call can't lease one.
+    long start = System.nanoTime();
+    Assert.assertEquals("", new ApiUtil(5000, 30000, 100).requestApi(uri));
+    Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    Assert.assertEquals(ApiUtil.MAX_CONNECTIONS_PER_HOST, requests.get());
+
+    release.countDown();
+    for (Future<String> holder : holders) {
+      Assert.assertEquals("[]", holder.get(30, TimeUnit.SECONDS));
+    }
+  }
+
+  private URI getUri(String path) throws Exception {
+    return new URI("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, bytes.length);
+    exchange.getResponseBody().write(bytes);
+    exchange.close();
+  }
+}
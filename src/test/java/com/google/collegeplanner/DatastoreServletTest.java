@@ -16,6 +16,8 @@ package com.google.collegeplanner;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.appengine.api.datastore.DatastoreService;
@@ -35,6 +37,7 @@ import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -389,4 +392,187 @@ public final class DatastoreServletTest {
     Assert.assertEquals("ONLINE", secondMeetingEntities.get(1).getProperty("room"));
     Assert.assertEquals("", secondMeetingEntities.get(1).getProperty("building"));
   }
+
+  @Test
+  public void pipelinedDownloadAddsEveryCourse() throws Exception {
+    // Answer by URI, since the fetchers run concurrently and in no fixed order.
+    when(apiUtil.getJsonArray(any(URI.class))).thenAnswer(invocation -> {
+      String uri = invocation.getArgument(0).toString();
+      if (uri.endsWith("page=1")) {
+        return firstCourseJson;
+      } else if (uri.endsWith("page=2")) {
+        return secondCourseJson;
+      } else if (uri.contains("AASP100")) {
+        return firstSectionJson;
+      } else if (uri.contains("AAST200")) {
+        return secondSectionJson;
+      }
+      return emptyJson;
+    });
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("page_fetchers")).thenReturn("3");
+    when(request.getParameter("section_fetchers")).thenReturn("4");
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(request, response);
+
+    Assert.assertEquals(2, datastore.prepare(new Query("Course")).countEntities());
+  }
+
+  @Test
+  public void pipelinedDownloadFailsForMissingPage() throws Exception {
+    when(apiUtil.getJsonArray(any(URI.class))).thenAnswer(invocation -> {
+      String uri = invocation.getArgument(0).toString();
+      if (uri.endsWith("page=1")) {
+        return firstCourseJson;
+      } else if (uri.contains("AASP100")) {
+        return firstSectionJson;
+      }
+      return uri.endsWith("page=2") ? null : emptyJson;
+    });
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("section_fetchers")).thenReturn("4");
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+  }
+
+  @Test
+  public void rejectsDisabledRateCap() throws Exception {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("requests_per_second")).thenReturn("0");
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    verify(apiUtil, never()).getJsonArray(any(URI.class));
+  }
+
+  @Test
+  public void bulkSectionsJoinsSectionsToCourses() throws Exception {
+    JSONArray allSections = new JSONArray();
+    allSections.addAll(firstSectionJson);
+    allSections.addAll(secondSectionJson);
+    when(apiUtil.getJsonArray(any(URI.class))).thenAnswer(invocation -> {
+      String uri = invocation.getArgument(0).toString();
+      if (uri.contains("/courses/sections?")) {
+        return uri.contains("page=1&") ? allSections : emptyJson;
+      } else if (uri.endsWith("page=1")) {
+        return firstCourseJson;
+      } else if (uri.endsWith("page=2")) {
+        return secondCourseJson;
+      } else if (uri.endsWith("/sections")) {
+        // Courses shouldn't need their own requests.
+        return null;
+      }
+      return emptyJson;
+    });
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("bulk_sections")).thenReturn("true");
+    when(request.getParameter("page_fetchers")).thenReturn("3");
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(request, response);
+
+    List<Entity> results =
+        datastore.prepare(new Query("Course")).asList(FetchOptions.Builder.withLimit(10));
+    Assert.assertEquals(2, results.size());
+    for (Entity courseEntity : results) {
+      ArrayList<EmbeddedEntity> sectionEntities =
+          (ArrayList<EmbeddedEntity>) courseEntity.getProperty("sections");
+      Assert.assertEquals(1, sectionEntities.size());
+      Assert.assertEquals(courseEntity.getProperty("course_id"),
+          sectionEntities.get(0).getProperty("course_id"));
+    }
+  }
+
+  @Test
+  public void bulkSectionsFailsWithoutLastPage() throws Exception {
+    // Every page of the bulk listing has sections, so the end of the listing is never seen.
+    when(apiUtil.getJsonArray(any(URI.class))).thenAnswer(invocation -> {
+      String uri = invocation.getArgument(0).toString();
+      if (uri.contains("/courses/sections?")) {
+        return firstSectionJson;
+      }
+      return uri.endsWith("page=1") ? firstCourseJson : emptyJson;
+    });
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("bulk_sections")).thenReturn("true");
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    Assert.assertEquals(0, datastore.prepare(new Query("Course")).countEntities());
+  }
+
+  @Test
+  public void unchangedCoursesAreNotRewritten() throws Exception {
+    JSONArray changedSectionJson = (JSONArray) parser.parse(firstSection.replace("\"8\"", "\"7\""));
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, emptyJson, firstCourseJson,
+            firstSectionJson, emptyJson, firstCourseJson, changedSectionJson, emptyJson);
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(null, response);
+    Assert.assertEquals(1L, takeCatalogSync().getProperty("added"));
+
+    ds.doPost(null, response);
+    Entity sync = takeCatalogSync();
+    Assert.assertEquals(1L, sync.getProperty("unchanged"));
+    Assert.assertEquals(0L, sync.getProperty("updated"));
+
+    // Only the open seats changed in the third download.
+    ds.doPost(null, response);
+    sync = takeCatalogSync();
+    Assert.assertEquals(1L, sync.getProperty("updated"));
+    Assert.assertEquals(Arrays.asList("AASP100"), sync.getProperty("changed_course_ids"));
+  }
+
+  @Test
+  public void coursesMissingFromDownloadAreRemoved() throws Exception {
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, secondCourseJson, secondSectionJson,
+            emptyJson, firstCourseJson, firstSectionJson, emptyJson);
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(null, response);
+    takeCatalogSync();
+    ds.doPost(null, response);
+
+    Assert.assertEquals(1, datastore.prepare(new Query("Course")).countEntities());
+    Entity sync = takeCatalogSync();
+    Assert.assertEquals(true, sync.getProperty("complete"));
+    Assert.assertEquals(1L, sync.getProperty("removed"));
+    Assert.assertEquals(Arrays.asList("AAST200"), sync.getProperty("changed_course_ids"));
+  }
+
+  @Test
+  public void listedCoursesThatFailToParseAreKept() throws Exception {
+    JSONArray invalidCourseJson = (JSONArray) parser.parse(
+        firstCourse.replace("\"Introduction to African American Studies\"", "5"));
+    JSONArray invalidSectionJson = (JSONArray) parser.parse(
+        secondSection.replace("\"3:30pm\"", "\"3:30\""));
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, secondCourseJson, secondSectionJson,
+            emptyJson, invalidCourseJson, secondCourseJson, invalidSectionJson, emptyJson);
+    DatastoreServlet ds = new DatastoreServlet(datastore, apiUtil);
+    ds.doPost(null, response);
+    takeCatalogSync();
+    ds.doPost(null, response);
+
+    // The first course can't be parsed and the second has no valid sections anymore, but both
+    // are still listed, so their stored entities are kept.
+    Assert.assertEquals(2, datastore.prepare(new Query("Course")).countEntities());
+    Entity sync = takeCatalogSync();
+    Assert.assertEquals(true, sync.getProperty("complete"));
+    Assert.assertEquals(0L, sync.getProperty("removed"));
+    Assert.assertEquals(0L, sync.getProperty("unchanged"));
+    Assert.assertEquals(0L, sync.getProperty("updated"));
+  }
+
+  /**
+   * Returns the change log of the only download since the last call, and deletes it.
+   */
+  private Entity takeCatalogSync() {
+    Entity sync = datastore.prepare(new Query("CatalogSync")).asSingleEntity();
+    datastore.delete(sync.getKey());
+    return sync;
+  }
 }
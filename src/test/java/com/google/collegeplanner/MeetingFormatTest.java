@@ -0,0 +1,168 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests MeetingFormat */
+@RunWith(JUnit4.class)
+public final class MeetingFormatTest {
+  private static final int FUZZ_ITERATIONS = 100000;
+  private static final String TIME_ALPHABET = "0123456789::aAmMpP x";
+  private static final String DAYS_ALPHABET = "MTWHFSAUmtwhfsau x";
+
+  @Test
+  public void parsesTimes() throws Exception {
+    Assert.assertEquals(600, MeetingFormat.parseTime("10:00am"));
+    Assert.assertEquals(650, MeetingFormat.parseTime("10:50AM"));
+    Assert.assertEquals(12 * 60 + 30, MeetingFormat.parseTime("12:30pm"));
+    Assert.assertEquals(13 * 60 + 5, MeetingFormat.parseTime("1:05Pm"));
+    Assert.assertEquals(9 * 60, MeetingFormat.parseTime("09:00am"));
+    Assert.assertEquals(24 * 60, MeetingFormat.parseTime("12:00am"));
+  }
+
+  @Test
+  public void rejectsInvalidTimes() {
+    String[] invalid = {null, "", "10:00", "13:00pm", "10:60am", "10:5am", "10:00 am",
+        "10:00amx", ":30pm", "10.00am", "10:00xm"};
+    for (String time : invalid) {
+      try {
+        MeetingFormat.parseTime(time);
+        Assert.fail("Parsed " + time);
+      } catch (ParseException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void parsesDays() throws Exception {
+    Assert.assertEquals(bits(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY),
+        MeetingFormat.parseDays("MWF"));
+    Assert.assertEquals(
+        bits(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY), MeetingFormat.parseDays("TuTh"));
+    Assert.assertEquals(bits(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY,
+        DayOfWeek.THURSDAY, DayOfWeek.FRIDAY), MeetingFormat.parseDays("MTUWTHF"));
+    Assert.assertEquals(0, MeetingFormat.parseDays(""));
+  }
+
+  @Test(expected = ParseException.class)
+  public void weekendDaysAreRejected() throws Exception {
+    MeetingFormat.parseDays("MSa");
+  }
+
+  @Test
+  public void randomTimesMatchJavaTime() {
+    Random random = new Random(0);
+    for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+      String time = i % 2 == 0 ? randomString(random, TIME_ALPHABET, 9)
+                               : String.format("%d:%02d%s", random.nextInt(14),
+                                   random.nextInt(61), random.nextBoolean() ? "am" : "PM");
+      Assert.assertEquals(time, referenceTime(time), parsedTime(time));
+    }
+  }
+
+  @Test
+  public void randomDaysMatchSubstringSearch() {
+    Random random = new Random(0);
+    for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+      String days = randomString(random, DAYS_ALPHABET, 8);
+      Assert.assertEquals(days, referenceDays(days), parsedDays(days));
+    }
+  }
+
+  private static String randomString(Random random, String alphabet, int maxLength) {
+    StringBuilder builder = new StringBuilder();
+    int length = random.nextInt(maxLength + 1);
+    for (int i = 0; i < length; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+
+  private static int bits(DayOfWeek... days) {
+    int mask = 0;
+    for (DayOfWeek day : days) {
+      mask |= MeetingFormat.bit(day);
+    }
+    return mask;
+  }
+
+  /**
+   * Returns the parsed time, or -1 if the time is invalid.
+   */
+  private static int parsedTime(String time) {
+    try {
+      return MeetingFormat.parseTime(time);
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parses the time the way Meeting used to, with java.time.
+   */
+  private static int referenceTime(String time) {
+    try {
+      LocalTime localTime =
+          LocalTime.parse(time.toUpperCase(), DateTimeFormatter.ofPattern("h:mma"));
+      return 60 * localTime.get(ChronoField.CLOCK_HOUR_OF_DAY)
+          + localTime.get(ChronoField.MINUTE_OF_HOUR);
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the parsed days, or -1 if the days are invalid.
+   */
+  private static int parsedDays(String days) {
+    try {
+      return MeetingFormat.parseDays(days);
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parses the days the way Meeting used to, by searching the uppercased string.
+   */
+  private static int referenceDays(String days) {
+    String upper = days.toUpperCase();
+    if (upper.contains("SA") || upper.contains("SU")) {
+      return -1;
+    }
+    int mask = 0;
+    String[] codes = {"M", "TU", "W", "TH", "F"};
+    DayOfWeek[] weekdays = {DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY,
+        DayOfWeek.THURSDAY, DayOfWeek.FRIDAY};
+    for (int i = 0; i < codes.length; i++) {
+      if (upper.contains(codes[i])) {
+        mask |= MeetingFormat.bit(weekdays[i]);
+      }
+    }
+    return mask;
+  }
+}
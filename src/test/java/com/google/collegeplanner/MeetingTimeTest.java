@@ -0,0 +1,61 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests MeetingTime */
+@RunWith(JUnit4.class)
+public final class MeetingTimeTest {
+  @Test
+  public void meetingsInTheSameBlockShareTheirTime() throws Exception {
+    Meeting first = new Meeting("MWF", "1101", "SQH", "10:00am", "10:50am");
+    Meeting second = new Meeting("mwf", "2205", "LEF", "10:00AM", "10:50AM");
+    Meeting other = new Meeting("TuTh", "1101", "SQH", "10:00am", "10:50am");
+
+    Assert.assertSame(first.getTime(), second.getTime());
+    Assert.assertSame(first.getTimeMask(), second.getTimeMask());
+    Assert.assertNotSame(first.getTime(), other.getTime());
+    Assert.assertTrue(first.conflictsWith(second));
+    Assert.assertFalse(first.conflictsWith(other));
+    Assert.assertEquals(
+        Arrays.asList(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY), other.getDays());
+  }
+
+  @Test
+  public void duplicateMeetingsOfASectionCollapse() throws Exception {
+    String meeting = "{\"days\": \"MWF\", \"room\": \"1101\", \"building\": \"SQH\","
+        + "\"start_time\": \"10:00am\", \"end_time\": \"10:50am\"}";
+    String otherRoom = "{\"days\": \"MWF\", \"room\": \"2205\", \"building\": \"LEF\","
+        + "\"start_time\": \"10:00am\", \"end_time\": \"10:50am\"}";
+    JSONObject json = (JSONObject) new JSONParser().parse("{\"section_id\": \"AASP100-0101\","
+        + "\"course\": \"AASP100\", \"seats\": \"21\", \"open_seats\": \"8\","
+        + "\"waitlist\": \"0\", \"instructors\": [], \"meetings\": [" + meeting + ", " + meeting
+        + ", " + otherRoom + "]}");
+
+    Section section = new Section(json);
+
+    Assert.assertEquals(2, section.getMeetings().length);
+    Assert.assertEquals("1101", section.getMeetings()[0].getRoom());
+    Assert.assertEquals("2205", section.getMeetings()[1].getRoom());
+  }
+}
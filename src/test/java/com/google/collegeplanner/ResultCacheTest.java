@@ -0,0 +1,103 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner;
+
+import com.google.collegeplanner.servlets.ResultCache;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests ResultCache */
+@RunWith(JUnit4.class)
+public final class ResultCacheTest {
+  @Test
+  public void cachedValueIsNotComputedAgain() throws Exception {
+    ResultCache<String, String> cache = new ResultCache<String, String>(100, 60000, String::length);
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.get("key", () -> "value" + calls.incrementAndGet(), value -> true);
+    String second = cache.get("key", () -> "value" + calls.incrementAndGet(), value -> true);
+
+    Assert.assertEquals("value1", second);
+    Assert.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+    ResultCache<String, String> cache = new ResultCache<String, String>(10, 60000, String::length);
+    cache.get("a", () -> "aaaa", value -> true);
+    cache.get("b", () -> "bbbb", value -> true);
+    // Using "a" again makes "b" the least recently used entry.
+    cache.get("a", () -> "changed", value -> true);
+    cache.get("c", () -> "cccc", value -> true);
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals("aaaa", cache.get("a", () -> "changed", value -> true));
+    Assert.assertEquals("changed", cache.get("b", () -> "changed", value -> true));
+  }
+
+  @Test
+  public void uncacheableAndFailedValuesAreNotKept() throws Exception {
+    ResultCache<String, String> cache = new ResultCache<String, String>(100, 60000, String::length);
+    cache.get("partial", () -> "partial", value -> false);
+    try {
+      cache.get("failed", () -> {
+        throw new IOException();
+      }, value -> true);
+      Assert.fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void concurrentMissesAreComputedOnce() throws Exception {
+    ResultCache<String, String> cache = new ResultCache<String, String>(100, 60000, String::length);
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    Future<String> first = executor.submit(() -> cache.get("key", () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      release.await();
+      return "value";
+    }, value -> true));
+    started.await();
+    Future<String> second = executor.submit(() -> cache.get("key", () -> {
+      calls.incrementAndGet();
+      return "other";
+    }, value -> true));
+    // Give the second request time to start waiting for the first one.
+    Thread.sleep(100);
+    release.countDown();
+
+    Assert.assertEquals("value", first.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals("value", second.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, calls.get());
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests SatScheduler and SatSolver */
+@RunWith(JUnit4.class)
+public final class SatSchedulerTest {
+  @Test
+  public void pagesListTheSameSchedulesAsBacktracking() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createRandomCourses(5, 6, new Random(3));
+    HashSet<Schedule> expected = new HashSet<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(expected::add);
+
+    HashSet<Schedule> found = new HashSet<Schedule>();
+    int pages = 0;
+    String cursor = null;
+    do {
+      SatScheduler scheduler = new SatScheduler(courses);
+      scheduler.setCursor(cursor);
+      ArrayList<Schedule> page = scheduler.getPossibleSchedules();
+      for (Schedule schedule : page) {
+        Assert.assertTrue(found.add(schedule));
+      }
+      Assert.assertFalse(scheduler.isTruncated());
+      cursor = scheduler.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    Assert.assertTrue(pages > 1);
+    Assert.assertEquals(expected, found);
+  }
+
+  @Test
+  public void overlappingCoursesHaveNoSchedules() throws Exception {
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    for (int course = 0; course < 7; course++) {
+      ArrayList<Section> sections = new ArrayList<Section>();
+      // Seven courses have to fit into six different hours.
+      for (int hour = 0; hour < 6; hour++) {
+        sections.add(createSection(course, hour, "MWF", 8 + hour));
+      }
+      courses.add(sections);
+    }
+
+    SatScheduler scheduler = new SatScheduler(courses);
+    scheduler.setSearchLimit(new SearchLimit(10000, Long.MAX_VALUE));
+    Assert.assertTrue(scheduler.getPossibleSchedules().isEmpty());
+    Assert.assertFalse(scheduler.isTruncated());
+    Assert.assertNull(scheduler.getNextCursor());
+  }
+
+  @Test
+  public void bestSchedulesMatchExactRanking() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createRandomCourses(4, 5, new Random(7));
+    SchedulePreferences preferences = new SchedulePreferences();
+
+    ArrayList<Schedule> expected = new SemesterScheduler(courses).getBestSchedules(preferences);
+    SatScheduler scheduler = new SatScheduler(courses);
+    ArrayList<Schedule> found = scheduler.getBestSchedules(preferences);
+
+    // There are fewer models than candidates, so every schedule was ranked.
+    Assert.assertFalse(scheduler.isTruncated());
+    Assert.assertEquals(expected.size(), found.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(
+          preferences.getCost(expected.get(i)), preferences.getCost(found.get(i)), 1e-9);
+    }
+  }
+
+  @Test
+  public void bestSchedulesAreTruncatedBeyondCandidates() throws Exception {
+    // Courses at different hours never conflict, so all 6^4 = 1296 picks are schedules.
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    for (int course = 0; course < 4; course++) {
+      ArrayList<Section> sections = new ArrayList<Section>();
+      for (int section = 0; section < 6; section++) {
+        sections.add(createSection(course, section, "MWF", 8 + course));
+      }
+      courses.add(sections);
+    }
+    SatScheduler scheduler = new SatScheduler(courses);
+    scheduler.getBestSchedules(new SchedulePreferences());
+
+    Assert.assertTrue(scheduler.isTruncated());
+  }
+
+  @Test
+  public void truncatedLaterPageKeepsItsCursor() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createRandomCourses(5, 6, new Random(3));
+    SatScheduler first = new SatScheduler(courses);
+    first.getPossibleSchedules();
+    SatScheduler second = new SatScheduler(courses);
+    second.setCursor(first.getNextCursor());
+    second.getPossibleSchedules();
+    String cursor = second.getNextCursor();
+    Assert.assertNotNull(cursor);
+
+    SearchLimit limit = SearchLimit.unlimited();
+    limit.cancel();
+    SatScheduler resumed = new SatScheduler(courses);
+    resumed.setCursor(cursor);
+    resumed.setSearchLimit(limit);
+
+    Assert.assertTrue(resumed.getPossibleSchedules().isEmpty());
+    Assert.assertTrue(resumed.isTruncated());
+    CompatibilityMatrix matrix = new CompatibilityMatrix(courses);
+    long[] given = ScheduleCursor.decodeModel(matrix, cursor);
+    long[] next = ScheduleCursor.decodeModel(matrix, resumed.getNextCursor());
+    Assert.assertTrue(next[0] > given[0] || (next[0] == given[0] && next[1] >= given[1]));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cursorOfOtherCoursesIsRejected() throws Exception {
+    SatScheduler first = new SatScheduler(createRandomCourses(5, 6, new Random(3)));
+    first.getPossibleSchedules();
+
+    SatScheduler second = new SatScheduler(createRandomCourses(4, 6, new Random(3)));
+    second.setCursor(first.getNextCursor());
+    second.getPossibleSchedules();
+  }
+
+  @Test
+  public void solverRefutesPigeonhole() {
+    // Seven pigeons don't fit into six holes, which takes many learnt clauses to prove.
+    int pigeons = 7;
+    int holes = 6;
+    SatSolver solver = new SatSolver(pigeons * holes);
+    for (int pigeon = 0; pigeon < pigeons; pigeon++) {
+      int[] clause = new int[holes];
+      for (int hole = 0; hole < holes; hole++) {
+        clause[hole] = SatSolver.positive(pigeon * holes + hole);
+      }
+      solver.addClause(clause);
+    }
+    for (int hole = 0; hole < holes; hole++) {
+      for (int first = 0; first < pigeons; first++) {
+        for (int second = first + 1; second < pigeons; second++) {
+          solver.addClause(SatSolver.negative(first * holes + hole),
+              SatSolver.negative(second * holes + hole));
+        }
+      }
+    }
+
+    Assert.assertEquals(SatSolver.Result.UNSATISFIABLE, solver.solve(() -> false));
+  }
+
+  private static ArrayList<ArrayList<Section>> createRandomCourses(
+      int courseCount, int sectionCount, Random random) throws ParseException {
+    String[] days = {"MWF", "TuTh", "MW", "F"};
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    for (int course = 0; course < courseCount; course++) {
+      ArrayList<Section> sections = new ArrayList<Section>();
+      for (int section = 0; section < sectionCount; section++) {
+        sections.add(createSection(
+            course, section, days[random.nextInt(days.length)], 8 + random.nextInt(5)));
+      }
+      courses.add(sections);
+    }
+    return courses;
+  }
+
+  private static Section createSection(int course, int section, String days, int hour)
+      throws ParseException {
+    String amPm = hour >= 12 ? "pm" : "am";
+    int clockHour = hour > 12 ? hour - 12 : hour;
+    Meeting meeting = new Meeting(
+        days, "Room", "Building", clockHour + ":00" + amPm, clockHour + ":50" + amPm);
+    return new Section("COURSE" + course + "-0" + section, "COURSE" + course, null,
+        Integer.toString(section), "30", null, new Meeting[] {meeting});
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests SectionCatalog */
+@RunWith(JUnit4.class)
+public final class SectionCatalogTest {
+  LocalServiceTestHelper helper;
+
+  @Before
+  public void before() {
+    helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+    helper.setUp();
+  }
+
+  @After
+  public void after() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void sectionsAreRebuiltFromColumns() throws Exception {
+    SectionCatalog catalog = SectionCatalog.fromEntities(Arrays.asList(
+        createCourse("AASP100", createSection("AASP100-0101", "MWF", 600, 650),
+            createSection("AASP100-0201", "TUTH", 570, 645)),
+        createCourse("CMSC131", createSection("CMSC131-0101", "MWF", 780, 830))));
+
+    Assert.assertEquals(2, catalog.getCourseCount());
+    Assert.assertEquals(3, catalog.getSectionCount());
+    Assert.assertEquals(-1, catalog.findCourse("MATH140"));
+    Assert.assertEquals(-1, catalog.findSection("AASP100", "AASP100-0301"));
+
+    int index = catalog.findSection("AASP100", "AASP100-0201");
+    Section expected = new Section(createSection("AASP100-0201", "TUTH", 570, 645));
+    Section section = catalog.getSection(index);
+    Assert.assertEquals(expected.toJSON(), section.toJSON());
+    Assert.assertEquals(expected.getTimeMask(), section.getTimeMask());
+    Assert.assertEquals(0, catalog.getCourseIndex(index));
+
+    ArrayList<Section> sections = catalog.getSections("CMSC131");
+    Assert.assertEquals(1, sections.size());
+    Assert.assertEquals("CMSC131-0101", sections.get(0).getSectionId());
+    Assert.assertNull(catalog.getSections("MATH140"));
+  }
+
+  @Test
+  public void findsSectionsWithinTimeWindow() throws Exception {
+    SectionCatalog catalog = SectionCatalog.fromEntities(Arrays.asList(
+        createCourse("AASP100", createSection("AASP100-0101", "MWF", 600, 650),
+            createSection("AASP100-0201", "TUTH", 570, 645)),
+        createCourse("CMSC131", createSection("CMSC131-0101", "MWF", 780, 830))));
+
+    TimeMask mornings = new TimeMask();
+    for (DayOfWeek day : DayOfWeek.values()) {
+      if (day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY) {
+        mornings.addInterval(day, 0, 12 * 60);
+      }
+    }
+
+    int[] found = catalog.getSectionsWithin(mornings);
+    Assert.assertArrayEquals(new int[] {0, 1}, found);
+  }
+
+  private static Entity createCourse(String courseId, EmbeddedEntity... sections) {
+    Entity course = new Entity("Course");
+    course.setProperty("course_id", courseId);
+    course.setProperty("sections", new ArrayList<EmbeddedEntity>(Arrays.asList(sections)));
+    return course;
+  }
+
+  private static EmbeddedEntity createSection(
+      String sectionId, String days, long startTime, long endTime) {
+    EmbeddedEntity meeting = new EmbeddedEntity();
+    meeting.setProperty("days", days);
+    meeting.setProperty("room", "1101");
+    meeting.setProperty("building", "SQH");
+    meeting.setProperty("start_time", startTime);
+    meeting.setProperty("end_time", endTime);
+
+    EmbeddedEntity section = new EmbeddedEntity();
+    section.setProperty("section_id", sectionId);
+    section.setProperty("course_id", sectionId.substring(0, 7));
+    section.setProperty("waitlist", "0");
+    section.setProperty("seats", 30L);
+    section.setProperty("open_seats", 5L);
+    section.setProperty("instructors", new ArrayList<String>(Arrays.asList("Shane Walsh")));
+    section.setProperty("meetings", new ArrayList<EmbeddedEntity>(Arrays.asList(meeting)));
+    return section;
+  }
+}
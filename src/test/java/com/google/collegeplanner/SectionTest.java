@@ -16,6 +16,7 @@ package com.google.collegeplanner;
 
 import static org.mockito.AdditionalMatchers.not;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -25,6 +26,9 @@ import static org.mockito.Mockito.when;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.collegeplanner.servlets.ApiUtil;
@@ -33,6 +37,9 @@ import com.google.collegeplanner.servlets.SectionServlet;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -274,4 +281,90 @@ public final class SectionTest {
     String expectedJson = "{\"message\":\"Not found.\",\"status\":\"error\"}";
     JSONAssert.assertEquals(expectedJson, responseJson.toString(), JSONCompareMode.STRICT);
   }
+
+  @Test
+  public void servletSeesStoredChanges() throws Exception {
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, emptyJson);
+    DatastoreServlet datastoreServlet = new DatastoreServlet(datastore, apiUtil);
+    datastoreServlet.doPost(null, mockedResponse);
+    SectionServlet servlet = new SectionServlet(datastore);
+    servlet.doGet(mockedRequest, mockedResponse);
+
+    // Change the stored seats directly, the way another instance's download would.
+    setOpenSeats(3);
+    Entity sync = new Entity("CatalogSync");
+    sync.setProperty("finished", new Date());
+    sync.setProperty("complete", true);
+    datastore.put(sync);
+
+    Assert.assertEquals(3L, getOpenSeats(servlet));
+  }
+
+  @Test
+  public void catalogIsKeptUntilNextSync() throws Exception {
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, emptyJson);
+    DatastoreServlet datastoreServlet = new DatastoreServlet(datastore, apiUtil);
+    datastoreServlet.doPost(null, mockedResponse);
+    SectionServlet servlet = new SectionServlet(datastore);
+    Assert.assertEquals(8L, getOpenSeats(servlet));
+
+    // Without a CatalogSync, the catalog that was already built is still used.
+    setOpenSeats(3);
+
+    Assert.assertEquals(8L, getOpenSeats(servlet));
+  }
+
+  @Test
+  public void invalidSectionOnlyAffectsItsCourse() throws Exception {
+    when(apiUtil.getJsonArray(any(URI.class)))
+        .thenReturn(firstCourseJson, firstSectionJson, emptyJson);
+    DatastoreServlet datastoreServlet = new DatastoreServlet(datastore, apiUtil);
+    datastoreServlet.doPost(null, mockedResponse);
+
+    // Store a course whose only section has a meeting on an unsupported day.
+    EmbeddedEntity meetingEntity = new EmbeddedEntity();
+    meetingEntity.setProperty("days", "Sa");
+    meetingEntity.setProperty("start_time", 600L);
+    meetingEntity.setProperty("end_time", 650L);
+    EmbeddedEntity sectionEntity = new EmbeddedEntity();
+    sectionEntity.setProperty("section_id", "BAD100-0101");
+    sectionEntity.setProperty("course_id", "BAD100");
+    sectionEntity.setProperty("seats", 10L);
+    sectionEntity.setProperty("open_seats", 5L);
+    sectionEntity.setProperty("meetings", Arrays.asList(meetingEntity));
+    Entity badCourse = new Entity("Course", "BAD100");
+    badCourse.setProperty("course_id", "BAD100");
+    badCourse.setProperty("sections", Arrays.asList(sectionEntity));
+    datastore.put(badCourse);
+
+    SectionServlet servlet = new SectionServlet(datastore);
+    servlet.doGet(mockedRequest, mockedResponse);
+    verify(mockedResponse, never()).setStatus(anyInt());
+
+    HttpServletRequest badRequest = mock(HttpServletRequest.class);
+    when(badRequest.getParameter("course_id")).thenReturn("BAD100");
+    when(badRequest.getParameter("section_id")).thenReturn("BAD100-0101");
+    servlet.doGet(badRequest, mockedResponse);
+    verify(mockedResponse).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+  }
+
+  private void setOpenSeats(long openSeats) throws Exception {
+    Entity courseEntity = datastore.get(KeyFactory.createKey("Course", "AASP100"));
+    List<EmbeddedEntity> sectionEntities =
+        (List<EmbeddedEntity>) courseEntity.getProperty("sections");
+    sectionEntities.get(0).setProperty("open_seats", openSeats);
+    courseEntity.setProperty("sections", sectionEntities);
+    datastore.put(courseEntity);
+  }
+
+  private long getOpenSeats(SectionServlet servlet) throws Exception {
+    stringWriter.getBuffer().setLength(0);
+    servlet.doGet(mockedRequest, mockedResponse);
+    writer.flush();
+    JSONObject responseObj = (JSONObject) parser.parse(stringWriter.toString());
+    JSONObject section = (JSONObject) ((JSONArray) responseObj.get("sections")).get(0);
+    return (Long) section.get("open_seats");
+  }
 }
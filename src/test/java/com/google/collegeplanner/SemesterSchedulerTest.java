@@ -18,6 +18,11 @@ import static com.google.common.truth.Truth.assertThat;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,9 +49,11 @@ public final class SemesterSchedulerTest {
   private ArrayList<Section> mathClasses;
   private ArrayList<Section> chemClasses;
   private ArrayList<ArrayList<Section>> allClasses;
+  private ForkJoinPool pool;
 
   @Before
   public void before() throws ParseException {
+    pool = new ForkJoinPool(4);
     String TIME_0900AM = "9:00am";
     String TIME_1000AM = "10:00am";
     String TIME_1100AM = "11:00am";
@@ -77,6 +84,11 @@ public final class SemesterSchedulerTest {
     allClasses.add(chemClasses);
   }
 
+  @After
+  public void after() {
+    pool.shutdownNow();
+  }
+
   @Test
   public void oneMeetingPerSectionOnePossibleSchedule() throws Exception {
     compSciClasses.add(new Section(
@@ -193,4 +205,519 @@ public final class SemesterSchedulerTest {
 
     assertThat(expectedSchedules).containsExactlyElementsIn(scheduler.getPossibleSchedules());
   }
+
+  @Test
+  public void mostConstrainedFirstFindsSameSchedules() throws Exception {
+    compSciClasses.add(new Section("0CMSC101 (MWF Morning and Friday Afternoon)", "CMSC101", null,
+        "10", "30", null, new Meeting[] {MWFMorning, fridayOnlyAfternoon}));
+    compSciClasses.add(new Section("1CMSC101 (TuThuLateAfternoon)", "CMSC101", null, "10", "30",
+        null, new Meeting[] {TuThuLateAfternoon}));
+    englishClasses.add(new Section("0ENGL101 (TuThu Morning, TuThuAfternoon)", "ENGL101", null,
+        "10", "30", null, new Meeting[] {TuThuMorning, TuThuAfternoon}));
+    mathClasses.add(new Section("0MATH101 (MWF Late Morning)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFLateMorning}));
+    mathClasses.add(new Section("1MATH101 (MWF Afternoon)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFAfternoon}));
+    chemClasses.add(new Section("0CHEM101 (TuThu Late Morning)", "CHEM101", null, "10", "30", null,
+        new Meeting[] {TuThuLateMorning}));
+
+    SemesterScheduler inOrder = new SemesterScheduler(allClasses);
+    scheduler = new SemesterScheduler(allClasses);
+    scheduler.setMostConstrainedFirst(true);
+
+    assertThat(scheduler.getPossibleSchedules())
+        .containsExactlyElementsIn(inOrder.getPossibleSchedules());
+  }
+
+  @Test
+  public void mostConstrainedFirstNoPossibleSchedules() throws Exception {
+    compSciClasses.add(new Section(
+        "CMSC101 (MW All Day)", "CMSC101", null, "10", "30", null, new Meeting[] {MWAllDay}));
+    englishClasses.add(new Section(
+        "ENGL101 (TuThu All Day)", "ENGL101", null, "10", "30", null, new Meeting[] {TuThuAllDay}));
+    mathClasses.add(new Section("MATH101 (MWF Afternoon)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFAfternoon}));
+    chemClasses.add(new Section("CHEM101 (TuThu Late Morning)", "CHEM101", null, "10", "30", null,
+        new Meeting[] {TuThuLateMorning}));
+
+    scheduler = new SemesterScheduler(allClasses);
+    scheduler.setMostConstrainedFirst(true);
+
+    Assert.assertTrue(scheduler.getPossibleSchedules().isEmpty());
+  }
+
+  @Test
+  public void parallelSchedulerMatchesSequentialOrder() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(5, 8);
+
+    ArrayList<Schedule> expected = new SemesterScheduler(courses).getPossibleSchedules();
+    ParallelSemesterScheduler parallel = new ParallelSemesterScheduler(courses, pool);
+
+    Assert.assertFalse(expected.isEmpty());
+    Assert.assertEquals(expected, parallel.getPossibleSchedules());
+  }
+
+  @Test
+  public void parallelSchedulerNoPossibleSchedules() throws Exception {
+    compSciClasses.add(new Section(
+        "CMSC101 (MW All Day)", "CMSC101", null, "10", "30", null, new Meeting[] {MWAllDay}));
+    englishClasses.add(new Section("ENGL101 (TuThu Morning)", "ENGL101", null, "10", "30", null,
+        new Meeting[] {TuThuMorning}));
+    mathClasses.add(new Section("MATH101 (MWF Afternoon)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFAfternoon}));
+    chemClasses.add(new Section("CHEM101 (TuThu Late Morning)", "CHEM101", null, "10", "30", null,
+        new Meeting[] {TuThuLateMorning}));
+
+    ParallelSemesterScheduler parallel = new ParallelSemesterScheduler(allClasses, pool);
+
+    Assert.assertTrue(parallel.getPossibleSchedules().isEmpty());
+  }
+
+  @Test
+  public void cursorContinuesWhereSearchStopped() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    scheduler = new SemesterScheduler(courses);
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    scheduler.iterator().forEachRemaining(expected::add);
+
+    ArrayList<Schedule> paged = new ArrayList<Schedule>();
+    String cursor = null;
+    do {
+      ScheduleIterator iterator = scheduler.iterator(cursor);
+      for (int i = 0; i < 4 && iterator.hasNext(); i++) {
+        paged.add(iterator.next());
+      }
+      cursor = iterator.hasNext() ? iterator.getCursor() : null;
+    } while (cursor != null);
+
+    Assert.assertTrue(expected.size() > 4);
+    Assert.assertEquals(expected, paged);
+  }
+
+  @Test
+  public void nextCursorOnlyWhenPageIsFull() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    SemesterScheduler fullPage = new SemesterScheduler(courses);
+    Assert.assertEquals(15, fullPage.getPossibleSchedules().size());
+    Assert.assertNotNull(fullPage.getNextCursor());
+    Assert.assertTrue(fullPage.iterator(fullPage.getNextCursor()).hasNext());
+
+    compSciClasses.add(new Section(
+        "CMSC101 (MWF Morning)", "CMSC101", null, "10", "30", null, new Meeting[] {MWFMorning}));
+    englishClasses.add(new Section("ENGL101 (TuThu Morning)", "ENGL101", null, "10", "30", null,
+        new Meeting[] {TuThuMorning}));
+    mathClasses.add(new Section("MATH101 (MWF Afternoon)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFAfternoon}));
+    chemClasses.add(new Section("CHEM101 (TuThu Late Morning)", "CHEM101", null, "10", "30", null,
+        new Meeting[] {TuThuLateMorning}));
+    scheduler = new SemesterScheduler(allClasses);
+    Assert.assertEquals(1, scheduler.getPossibleSchedules().size());
+    Assert.assertNull(scheduler.getNextCursor());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cursorFromOtherCoursesIsRejected() throws Exception {
+    SemesterScheduler first = new SemesterScheduler(createCourses(4, 6));
+    first.getPossibleSchedules();
+    SemesterScheduler second = new SemesterScheduler(createCourses(3, 6));
+    second.iterator(first.getNextCursor());
+  }
+
+  @Test
+  public void cursorFormatIsCheckedWithoutCourses() throws Exception {
+    SemesterScheduler scheduler = new SemesterScheduler(createCourses(4, 6));
+    scheduler.getPossibleSchedules();
+    SemesterScheduler.checkCursor(scheduler.getNextCursor());
+    for (String cursor : Arrays.asList("not a cursor!", "djI6YWJjOjEuMi54", "czE6YWJjOjEuMg")) {
+      try {
+        SemesterScheduler.checkCursor(cursor);
+        Assert.fail("Accepted " + cursor);
+      } catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void bestSchedulesMatchScoringEverySchedule() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    SchedulePreferences preferences = new SchedulePreferences();
+    scheduler = new SemesterScheduler(courses);
+    ArrayList<Double> expectedCosts = new ArrayList<Double>();
+    scheduler.iterator().forEachRemaining(
+        schedule -> expectedCosts.add(preferences.getCost(schedule)));
+    expectedCosts.sort(null);
+
+    ArrayList<Schedule> best = scheduler.getBestSchedules(preferences);
+
+    Assert.assertEquals(15, best.size());
+    for (int i = 0; i < best.size(); i++) {
+      Assert.assertEquals(expectedCosts.get(i), preferences.getCost(best.get(i)), 1e-9);
+    }
+  }
+
+  @Test
+  public void bestSchedulesPreferLaterStart() throws Exception {
+    compSciClasses.add(new Section(
+        "CMSC101 (MWF Morning)", "CMSC101", null, "10", "30", null, new Meeting[] {MWFMorning}));
+    compSciClasses.add(new Section("CMSC101 (MWF Late Morning)", "CMSC101", null, "10", "30", null,
+        new Meeting[] {MWFLateMorning}));
+    allClasses.remove(englishClasses);
+    allClasses.remove(mathClasses);
+    allClasses.remove(chemClasses);
+
+    scheduler = new SemesterScheduler(allClasses);
+    ArrayList<Schedule> best = scheduler.getBestSchedules(new SchedulePreferences());
+
+    Assert.assertEquals(2, best.size());
+    Assert.assertSame(compSciClasses.get(1), best.get(0).getSections().get(0));
+  }
+
+  @Test
+  public void countMatchesEnumeration() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(5, 8);
+    scheduler = new SemesterScheduler(courses);
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    scheduler.iterator().forEachRemaining(expected::add);
+
+    ScheduleCount count = new ScheduleCounter(courses).count();
+
+    Assert.assertTrue(count.isExact());
+    Assert.assertEquals(expected.size(), count.getValue());
+  }
+
+  @Test
+  public void countWithoutTimeBudgetIsEstimated() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(5, 8);
+    long exact = new ScheduleCounter(courses).count().getValue();
+    ScheduleCounter counter = new ScheduleCounter(courses);
+    counter.setTimeBudget(0);
+
+    ScheduleCount count = counter.count();
+
+    Assert.assertFalse(count.isExact());
+    Assert.assertTrue(count.getMargin() > 0);
+    Assert.assertTrue(count.getMargin() < count.getValue());
+    Assert.assertTrue(Math.abs(count.getValue() - exact) <= count.getMargin());
+  }
+
+  @Test
+  public void countBeyondLongRangeIsNotExact() throws Exception {
+    // Forty courses that never conflict, with three sections each, have 3^40 schedules.
+    String[] days = {"M", "Tu", "W", "Th", "F"};
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    for (int course = 0; course < 40; course++) {
+      int hour = 8 + course / days.length;
+      String amPm = hour >= 12 ? "pm" : "am";
+      int clockHour = hour > 12 ? hour - 12 : hour;
+      Meeting meeting = new Meeting(days[course % days.length], "Room", "Building",
+          clockHour + ":00" + amPm, clockHour + ":50" + amPm);
+      ArrayList<Section> courseSections = new ArrayList<Section>();
+      for (int section = 0; section < 3; section++) {
+        courseSections.add(new Section("COURSE" + course + "-0" + section, "COURSE" + course,
+            null, "10", "30", null, new Meeting[] {meeting}));
+      }
+      courses.add(courseSections);
+    }
+
+    ScheduleCount count = new ScheduleCounter(courses).count();
+
+    Assert.assertFalse(count.isExact());
+    Assert.assertEquals(Long.MAX_VALUE, count.getValue());
+  }
+
+  @Test
+  public void countIsZeroForCourseWithoutSections() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(3, 4);
+    courses.add(new ArrayList<Section>());
+
+    ScheduleCount count = new ScheduleCounter(courses).count();
+
+    Assert.assertTrue(count.isExact());
+    Assert.assertEquals(0, count.getValue());
+  }
+
+  @Test
+  public void interchangeableSectionsAreAllListed() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(3, 4);
+    ArrayList<Schedule> distinctTimes = new ArrayList<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(distinctTimes::add);
+    for (ArrayList<Section> course : courses) {
+      for (Section section : new ArrayList<Section>(course)) {
+        course.add(new Section(section.getSectionId() + "-copy", section.getCourseId(), null,
+            "10", "30", null, section.getMeetings()));
+      }
+    }
+
+    scheduler = new SemesterScheduler(courses);
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    scheduler.iterator().forEachRemaining(expected::add);
+    ArrayList<Schedule> paged = new ArrayList<Schedule>();
+    String cursor = null;
+    do {
+      ScheduleIterator iterator = scheduler.iterator(cursor);
+      for (int i = 0; i < 5 && iterator.hasNext(); i++) {
+        paged.add(iterator.next());
+      }
+      cursor = iterator.hasNext() ? iterator.getCursor() : null;
+    } while (cursor != null);
+
+    Assert.assertEquals(distinctTimes.size() * 8, expected.size());
+    HashSet<String> distinct = new HashSet<String>();
+    expected.forEach(schedule -> distinct.add(schedule.toJSON().toString()));
+    Assert.assertEquals(expected.size(), distinct.size());
+    Assert.assertEquals(expected, paged);
+    Assert.assertEquals(expected.size(), new ScheduleCounter(courses).count().getValue());
+    Assert.assertEquals(expected.subList(0, 15),
+        new ParallelSemesterScheduler(courses, pool).getPossibleSchedules());
+  }
+
+  @Test
+  public void indexedSchedulesCompareBySections() throws Exception {
+    CompatibilityMatrix matrix = new CompatibilityMatrix(createCourses(3, 4));
+    IndexedSchedule first = IndexedSchedule.of(matrix, new int[] {1, 6, 9});
+    IndexedSchedule second = IndexedSchedule.of(matrix, new int[] {9, 1, 6});
+
+    Assert.assertEquals(first, second);
+    Assert.assertEquals(first.hashCode(), second.hashCode());
+    Assert.assertEquals(first.toJSON(), first.toSchedule().toJSON());
+
+    second.pop();
+    Assert.assertNotEquals(first, second);
+    second.push(5);
+    Assert.assertNotEquals(first, second);
+    second.pop();
+    second.push(6);
+    Assert.assertEquals(first.hashCode(), second.hashCode());
+  }
+
+  @Test
+  public void indexedIteratorMatchesScheduleIterator() throws Exception {
+    scheduler = new SemesterScheduler(createCourses(4, 6));
+    ScheduleIterator schedules = scheduler.iterator();
+    ScheduleIterator indexed = scheduler.iterator();
+    while (schedules.hasNext()) {
+      Assert.assertEquals(schedules.next(), indexed.nextIndexed().toSchedule());
+    }
+    Assert.assertFalse(indexed.hasNext());
+  }
+
+  @Test
+  public void cancelledSearchIsTruncated() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    SearchLimit limit = SearchLimit.unlimited();
+    limit.cancel();
+    scheduler = new SemesterScheduler(courses);
+    scheduler.setSearchLimit(limit);
+    ParallelSemesterScheduler parallel = new ParallelSemesterScheduler(courses, pool);
+    parallel.setSearchLimit(limit);
+
+    Assert.assertTrue(scheduler.getPossibleSchedules().isEmpty());
+    Assert.assertTrue(scheduler.isTruncated());
+    Assert.assertTrue(parallel.getPossibleSchedules().isEmpty());
+    Assert.assertTrue(parallel.isTruncated());
+
+    // Both searches stopped before they found anything, so their cursors start from the top.
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(expected::add);
+    for (String cursor : Arrays.asList(scheduler.getNextCursor(), parallel.getNextCursor())) {
+      ArrayList<Schedule> continued = new ArrayList<Schedule>();
+      new SemesterScheduler(courses).iterator(cursor).forEachRemaining(continued::add);
+      Assert.assertEquals(expected, continued);
+    }
+  }
+
+  @Test
+  public void truncatedSearchCanBeContinued() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(7, 9);
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(expected::add);
+
+    scheduler = new SemesterScheduler(courses);
+    scheduler.setSearchLimit(new SearchLimit(Long.MAX_VALUE, 1));
+    ScheduleIterator iterator = scheduler.iterator();
+    ArrayList<Schedule> found = new ArrayList<Schedule>();
+    iterator.forEachRemaining(found::add);
+    Assert.assertTrue(iterator.isTruncated());
+    new SemesterScheduler(courses).iterator(iterator.getCursor()).forEachRemaining(found::add);
+
+    Assert.assertEquals(expected, found);
+  }
+
+  @Test
+  public void truncatedSearchContinuesPastDeadEnds() throws Exception {
+    // The first section of the first course leaves seven courses for six hours, which takes the
+    // search more steps to rule out than the limit allows.
+    String[] hours = {"8:00am", "9:00am", "10:00am", "11:00am", "12:00pm", "1:00pm", "2:00pm"};
+    String[] ends = {"8:50am", "9:50am", "10:50am", "11:50am", "12:50pm", "1:50pm", "2:50pm"};
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    courses.add(new ArrayList<Section>(Arrays.asList(
+        new Section("FIRST-01", "FIRST", null, "10", "30", null, new Meeting[] {
+            new Meeting("MWF", "Room", "Building", hours[0], ends[0])}),
+        new Section("FIRST-02", "FIRST", null, "10", "30", null, new Meeting[] {
+            new Meeting("TuTh", "Room", "Building", hours[0], ends[0])}))));
+    for (int course = 0; course < hours.length; course++) {
+      ArrayList<Section> courseSections = new ArrayList<Section>();
+      for (int hour = 0; hour < hours.length; hour++) {
+        courseSections.add(new Section("COURSE" + course + "-0" + hour, "COURSE" + course, null,
+            "10", "30", null, new Meeting[] {
+                new Meeting("MWF", "Room", "Building", hours[hour], ends[hour])}));
+      }
+      courses.add(courseSections);
+    }
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(expected::add);
+
+    ArrayList<Schedule> found = new ArrayList<Schedule>();
+    scheduler = new SemesterScheduler(courses);
+    scheduler.setSearchLimit(new SearchLimit(Long.MAX_VALUE, 1));
+    ScheduleIterator iterator = scheduler.iterator();
+    Assert.assertFalse(iterator.hasNext());
+    Assert.assertTrue(iterator.isTruncated());
+    String cursor = iterator.getCursor();
+    Assert.assertNotNull(cursor);
+    int pages = 0;
+    while (cursor != null) {
+      Assert.assertTrue(++pages < 100);
+      scheduler.setSearchLimit(new SearchLimit(Long.MAX_VALUE, 1));
+      iterator = scheduler.iterator(cursor);
+      iterator.forEachRemaining(found::add);
+      cursor = iterator.isTruncated() ? iterator.getCursor() : null;
+    }
+
+    Assert.assertFalse(expected.isEmpty());
+    Assert.assertEquals(expected, found);
+  }
+
+  @Test
+  public void blockedTimeRemovesConflictingSchedules() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    TimeMask blocked = new Meeting("MW", null, null, "9:00am", "11:00am").getTimeMask();
+    ArrayList<Schedule> expected = new ArrayList<Schedule>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(schedule -> {
+      if (!schedule.getTimeMask().intersects(blocked)) {
+        expected.add(schedule);
+      }
+    });
+
+    scheduler = new SemesterScheduler(SemesterScheduler.removeBlockedSections(courses, blocked));
+    ArrayList<Schedule> found = new ArrayList<Schedule>();
+    scheduler.iterator().forEachRemaining(found::add);
+
+    Assert.assertFalse(found.isEmpty());
+    assertThat(found).containsExactlyElementsIn(expected);
+  }
+
+  @Test
+  public void diverseSchedulesAreValidAndSpreadOut() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(5, 8);
+    scheduler = new SemesterScheduler(courses);
+    ArrayList<Schedule> all = new ArrayList<Schedule>();
+    scheduler.iterator().forEachRemaining(all::add);
+
+    ArrayList<Schedule> diverse = scheduler.getDiverseSchedules(new Random(1));
+
+    Assert.assertEquals(15, diverse.size());
+    assertThat(all).containsAtLeastElementsIn(diverse);
+    HashSet<Section> firstCourseSections = new HashSet<Section>();
+    HashSet<Section> firstCourseSectionsInOrder = new HashSet<Section>();
+    for (int i = 0; i < 15; i++) {
+      firstCourseSections.add(diverse.get(i).getSections().get(0));
+      firstCourseSectionsInOrder.add(all.get(i).getSections().get(0));
+    }
+    Assert.assertTrue(firstCourseSections.size() > firstCourseSectionsInOrder.size());
+  }
+
+  @Test
+  public void diverseSchedulesNoPossibleSchedules() throws Exception {
+    compSciClasses.add(new Section(
+        "CMSC101 (MW All Day)", "CMSC101", null, "10", "30", null, new Meeting[] {MWAllDay}));
+    englishClasses.add(new Section("ENGL101 (MW Morning)", "ENGL101", null, "10", "30", null,
+        new Meeting[] {MWFMorning}));
+    mathClasses.add(new Section("MATH101 (MWF Afternoon)", "MATH101", null, "10", "30", null,
+        new Meeting[] {MWFAfternoon}));
+    chemClasses.add(new Section("CHEM101 (TuThu Late Morning)", "CHEM101", null, "10", "30", null,
+        new Meeting[] {TuThuLateMorning}));
+
+    scheduler = new SemesterScheduler(allClasses);
+
+    Assert.assertTrue(scheduler.getDiverseSchedules(new Random(1)).isEmpty());
+  }
+
+  @Test
+  public void fullSectionsAreRemoved() throws Exception {
+    compSciClasses.add(new Section(
+        "CMSC101-full", "CMSC101", "12", "0", "30", null, new Meeting[] {MWFMorning}));
+    compSciClasses.add(new Section(
+        "CMSC101-waitlisted", "CMSC101", "2", "0", "30", null, new Meeting[] {MWFLateMorning}));
+    compSciClasses.add(new Section(
+        "CMSC101-few", "CMSC101", "0", "3", "30", null, new Meeting[] {MWFAfternoon}));
+    compSciClasses.add(new Section(
+        "CMSC101-many", "CMSC101", "0", "20", "30", null, new Meeting[] {TuThuMorning}));
+    allClasses.remove(englishClasses);
+    allClasses.remove(mathClasses);
+    allClasses.remove(chemClasses);
+
+    ArrayList<Section> openOnly = SemesterScheduler.removeFullSections(allClasses, -1).get(0);
+    ArrayList<Section> withWaitlist = SemesterScheduler.removeFullSections(allClasses, 5).get(0);
+
+    Assert.assertEquals(2, openOnly.size());
+    Assert.assertSame(compSciClasses.get(3), openOnly.get(0));
+    Assert.assertSame(compSciClasses.get(2), openOnly.get(1));
+    Assert.assertEquals(3, withWaitlist.size());
+    Assert.assertSame(compSciClasses.get(1), withWaitlist.get(2));
+  }
+
+  @Test
+  public void corequisitesAreScheduledAsBundles() throws Exception {
+    ArrayList<ArrayList<Section>> courses = createCourses(4, 6);
+    ArrayList<String> expected = new ArrayList<String>();
+    new SemesterScheduler(courses).iterator().forEachRemaining(
+        schedule -> expected.add(schedule.toJSON().toString()));
+
+    ArrayList<ArrayList<Section>> bundled = SemesterScheduler.bundleCorequisites(
+        courses, Arrays.asList(Arrays.asList(1, 3)));
+    scheduler = new SemesterScheduler(bundled);
+    ArrayList<String> found = new ArrayList<String>();
+    scheduler.iterator().forEachRemaining(schedule -> found.add(schedule.toJSON().toString()));
+
+    Assert.assertEquals(3, bundled.size());
+    for (Section bundle : bundled.get(1)) {
+      Assert.assertEquals(2, bundle.getParts().length);
+      Assert.assertFalse(bundle.getParts()[0].conflictsWith(bundle.getParts()[1]));
+    }
+    assertThat(found).containsExactlyElementsIn(expected);
+    Assert.assertEquals(expected.size(), new ScheduleCounter(bundled).count().getValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void courseInTwoCorequisiteGroupsIsRejected() throws Exception {
+    SemesterScheduler.bundleCorequisites(
+        createCourses(3, 2), Arrays.asList(Arrays.asList(0, 1), Arrays.asList(1, 2)));
+  }
+
+  /**
+   * Creates a list of courses whose sections meet at a spread of times during the week.
+   * @param courseCount the number of courses to create
+   * @param sectionCount the number of sections each course has
+   */
+  private ArrayList<ArrayList<Section>> createCourses(int courseCount, int sectionCount)
+      throws ParseException {
+    ArrayList<ArrayList<Section>> courses = new ArrayList<ArrayList<Section>>();
+    String[] days = {"MWF", "TuTh", "MW", "F"};
+    for (int course = 0; course < courseCount; course++) {
+      ArrayList<Section> courseSections = new ArrayList<Section>();
+      for (int section = 0; section < sectionCount; section++) {
+        int hour = 8 + (course * 3 + section * 5) % 9;
+        String amPm = hour >= 12 ? "pm" : "am";
+        int clockHour = hour > 12 ? hour - 12 : hour;
+        Meeting meeting = new Meeting(days[(course + section) % days.length], "Room", "Building",
+            clockHour + ":00" + amPm, clockHour + ":50" + amPm);
+        courseSections.add(new Section("COURSE" + course + "-0" + section, "COURSE" + course,
+            null, "10", "30", null, new Meeting[] {meeting}));
+      }
+      courses.add(courseSections);
+    }
+    return courses;
+  }
 }
@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.collegeplanner.data;
+
+import java.time.DayOfWeek;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests TimeMask */
+@RunWith(JUnit4.class)
+public final class TimeMaskTest {
+  @Test
+  public void overlappingIntervalsIntersect() {
+    TimeMask first = new TimeMask();
+    first.addInterval(DayOfWeek.MONDAY, 600, 650);
+    TimeMask second = new TimeMask();
+    second.addInterval(DayOfWeek.MONDAY, 645, 700);
+    Assert.assertTrue(first.intersects(second));
+    Assert.assertTrue(second.intersects(first));
+  }
+
+  @Test
+  public void backToBackIntervalsDoNotIntersect() {
+    TimeMask first = new TimeMask();
+    first.addInterval(DayOfWeek.TUESDAY, 570, 645);
+    TimeMask second = new TimeMask();
+    second.addInterval(DayOfWeek.TUESDAY, 645, 720);
+    Assert.assertFalse(first.intersects(second));
+  }
+
+  @Test
+  public void differentDaysDoNotIntersect() {
+    TimeMask first = new TimeMask();
+    first.addInterval(DayOfWeek.MONDAY, 0, 24 * 60);
+    TimeMask second = new TimeMask();
+    second.addInterval(DayOfWeek.TUESDAY, 0, 24 * 60);
+    Assert.assertFalse(first.intersects(second));
+  }
+
+  @Test
+  public void andNotRemovesInterval() {
+    TimeMask occupied = new TimeMask();
+    TimeMask morning = new TimeMask();
+    morning.addInterval(DayOfWeek.FRIDAY, 540, 600);
+    TimeMask afternoon = new TimeMask();
+    afternoon.addInterval(DayOfWeek.FRIDAY, 780, 840);
+    occupied.or(morning);
+    occupied.or(afternoon);
+
+    occupied.andNot(afternoon);
+    Assert.assertEquals(morning, occupied);
+    occupied.andNot(morning);
+    Assert.assertTrue(occupied.isEmpty());
+  }
+
+  @Test
+  public void reportsSlotsPerDay() {
+    TimeMask mask = new TimeMask();
+    mask.addInterval(DayOfWeek.WEDNESDAY, 600, 650);
+    mask.addInterval(DayOfWeek.WEDNESDAY, 780, 840);
+    mask.addInterval(DayOfWeek.THURSDAY, 0, 24 * 60);
+
+    Assert.assertEquals(120, mask.getFirstSlot(DayOfWeek.WEDNESDAY));
+    Assert.assertEquals(168, mask.getEndSlot(DayOfWeek.WEDNESDAY));
+    Assert.assertEquals(22, mask.countSlots(DayOfWeek.WEDNESDAY));
+    Assert.assertEquals(0, mask.getFirstSlot(DayOfWeek.THURSDAY));
+    Assert.assertEquals(TimeMask.SLOTS_PER_DAY, mask.getEndSlot(DayOfWeek.THURSDAY));
+    Assert.assertEquals(-1, mask.getFirstSlot(DayOfWeek.FRIDAY));
+    Assert.assertEquals(0, mask.countSlots(DayOfWeek.MONDAY));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void weekendsAreRejected() {
+    new TimeMask().addInterval(DayOfWeek.SATURDAY, 600, 650);
+  }
+}